@@ -14,6 +14,7 @@ plugins {
     id("net.ltgt.nullaway") version "3.0.0"
     kotlin("jvm") version "2.3.20"
     kotlin("plugin.spring") version "2.3.20"
+    id("me.champeau.jmh") version "0.7.3"
     jacoco
 }
 
@@ -72,6 +73,7 @@ dependencies {
     implementation("org.springframework.boot:spring-boot-starter-oauth2-client")
     implementation("org.springframework.boot:spring-boot-starter-kafka")
     implementation("org.springframework.boot:spring-boot-starter-flyway")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
     implementation("org.thymeleaf.extras:thymeleaf-extras-springsecurity6")
     implementation("com.fasterxml.jackson.datatype:jackson-datatype-jdk8")
     implementation("tools.jackson.module:jackson-module-kotlin")
@@ -90,6 +92,7 @@ dependencies {
     // gPAS via Soap
     implementation("org.apache.cxf:cxf-rt-frontend-jaxws:${apacheCxfVersion}")
     implementation("org.apache.cxf:cxf-rt-transports-http:${apacheCxfVersion}")
+    implementation("org.apache.cxf:cxf-rt-transports-http-hc5:${apacheCxfVersion}")
     implementation("org.springframework.modulith:spring-modulith-starter-core")
     implementation("org.springframework.modulith:spring-modulith-starter-jdbc")
 
@@ -169,6 +172,13 @@ tasks.register("allTests") {
     dependsOn(tasks.withType<Test>())
 }
 
+jmh {
+    includeTests = true
+    profilers.add("gc")
+    resultFormat = "JSON"
+    project.findProperty("jmhIncludes")?.let { includes.add(it.toString()) }
+}
+
 tasks.jacocoTestReport {
     dependsOn("allTests")
 
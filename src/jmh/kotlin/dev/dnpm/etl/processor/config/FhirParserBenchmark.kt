@@ -0,0 +1,135 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.config
+
+import ca.uhn.fhir.context.FhirContext
+import ca.uhn.fhir.context.PerformanceOptionsEnum
+import ca.uhn.fhir.parser.IParser
+import org.hl7.fhir.r4.model.Bundle
+import org.hl7.fhir.r4.model.Consent
+import org.hl7.fhir.r4.model.Identifier
+import org.hl7.fhir.r4.model.Parameters
+import org.hl7.fhir.r4.model.StringType
+import org.openjdk.jmh.annotations.*
+import org.springframework.core.io.ClassPathResource
+import tools.jackson.databind.JsonNode
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmarks for FHIR parser usage at gPAS, gICS and consent embedding call sites, using a new
+ * parser for each call on a separate default FHIR context (`DEFAULT`) or on the shared FHIR context
+ * (`SHARED`).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class FhirParserBenchmark {
+    @Param("DEFAULT", "SHARED")
+    @JvmField
+    var parsers: String = ""
+
+    private val separateFhirContext = FhirContext.forR4()
+
+    private lateinit var gpasRequest: Parameters
+    private lateinit var gpasResponse: String
+    private lateinit var consentResponse: String
+    private lateinit var consent: Consent
+    private lateinit var consentJson: String
+
+    @Setup(Level.Trial)
+    fun setup() {
+        val parser = SharedFhirContext.fhirContext().newJsonParser()
+        gpasRequest =
+            Parameters().apply {
+                addParameter().setName("target").setValue(StringType("etl-processor"))
+                addParameter().setName("original").setValue(StringType("P1"))
+            }
+        gpasResponse =
+            parser.encodeResourceToString(
+                Parameters().apply {
+                    addParameter()
+                        .setName("pseudonym")
+                        .addPart(Parameters.ParametersParameterComponent().setName("original").setValue(Identifier().setValue("P1")))
+                        .addPart(Parameters.ParametersParameterComponent().setName("pseudonym").setValue(Identifier().setValue("PSN_P1")))
+                },
+            )
+        consentResponse = ClassPathResource("fake_broadConsent_mii_response_permit.json").inputStream.readAllBytes().decodeToString()
+        consent = parser.parseResource(Bundle::class.java, consentResponse).entry.first().resource as Consent
+        consentJson = parser.encodeResourceToString(consent)
+    }
+
+    private fun fhirContext(): FhirContext = if (parsers == "DEFAULT") separateFhirContext else SharedFhirContext.fhirContext()
+
+    private fun jsonParser(): IParser = fhirContext().newJsonParser()
+
+    private fun xmlParser(): IParser = fhirContext().newXmlParser()
+
+    @Benchmark
+    fun encodeGpasRequest(): String = jsonParser().encodeResourceToString(gpasRequest)
+
+    @Benchmark
+    fun parseGpasResponse(): Parameters = jsonParser().parseResource(Parameters::class.java, gpasResponse)
+
+    @Benchmark
+    fun encodeGicsXmlRequest(): String = xmlParser().encodeResourceToString(gpasRequest)
+
+    @Benchmark
+    fun parseConsentResponse(): Bundle = jsonParser().parseResource(Bundle::class.java, consentResponse)
+
+    @Benchmark
+    fun consentToJsonTree(): JsonNode = FhirJsonTreeWriter.toJsonTree(fhirContext(), consent)
+
+    @Benchmark
+    fun parseConsent(): Consent = jsonParser().parseResource(Consent::class.java, consentJson)
+}
+
+/**
+ * Benchmark for creation of a FHIR context with the first parsed resource, with model scanning on
+ * creation (`EAGER`) or deferred model scanning as used by [SharedFhirContext] (`DEFERRED`).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 10)
+@Fork(10)
+open class FhirContextBenchmark {
+    @Param("EAGER", "DEFERRED")
+    @JvmField
+    var modelScanning: String = ""
+
+    @Benchmark
+    fun createContextAndParse(): Parameters {
+        val fhirContext = FhirContext.forR4()
+        if (modelScanning == "DEFERRED") {
+            fhirContext.setPerformanceOptions(PerformanceOptionsEnum.DEFERRED_MODEL_SCANNING)
+        }
+        return fhirContext.newJsonParser().parseResource(Parameters::class.java, GPAS_RESPONSE)
+    }
+
+    companion object {
+        private const val GPAS_RESPONSE =
+            """{"resourceType":"Parameters","parameter":[{"name":"pseudonym","part":[{"name":"pseudonym","valueIdentifier":{"value":"PSN_P1"}}]}]}"""
+    }
+}
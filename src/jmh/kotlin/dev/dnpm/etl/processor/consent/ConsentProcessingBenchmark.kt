@@ -0,0 +1,167 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent
+
+import dev.dnpm.etl.processor.config.AppConfigProperties
+import dev.dnpm.etl.processor.config.AppFhirConfig
+import dev.dnpm.etl.processor.config.GIcsConfigProperties
+import dev.dnpm.etl.processor.config.JacksonConfig
+import dev.dnpm.etl.processor.config.SharedFhirContext
+import dev.dnpm.etl.processor.pseudonym.ensureMetaDataIsInitialized
+import dev.dnpm.etl.processor.services.ConsentProcessor
+import dev.pcvolkmer.mv64e.mtb.Mtb
+import dev.pcvolkmer.mv64e.mtb.Patient
+import org.hl7.fhir.r4.model.Bundle
+import org.hl7.fhir.r4.model.Consent
+import org.hl7.fhir.r4.model.Consent.ProvisionComponent
+import org.openjdk.jmh.annotations.*
+import org.springframework.core.io.ClassPathResource
+import org.springframework.retry.support.RetryTemplate
+import org.springframework.web.client.RestTemplate
+import java.util.*
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmarks for consent processing of gICS responses in [ConsentProcessor] and
+ * [GicsConsentService].
+ *
+ * Synthetic bundles (`SYNTHETIC_<n>`) extend the gICS broad consent response with additional
+ * policy consents up to `n` consent resources. Use the configured GC profiler to compare bytes
+ * allocated per operation, e.g. `./gradlew jmh -PjmhIncludes=ConsentProcessingBenchmark`.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class ConsentProcessingBenchmark {
+    @Param(
+        "fake_broadConsent_gics_response_permit.json",
+        "fake_mv64e-gics-response_permit.json",
+        "fake_mv64e-gics-response_deny.json",
+        "SYNTHETIC_250",
+        "SYNTHETIC_1000",
+    )
+    @JvmField
+    var response: String = ""
+
+    private val gIcsConfigProperties =
+        GIcsConfigProperties(uri = "https://gics.example.com", genomDeConsentDomainName = "GenomDE_MV")
+
+    private lateinit var consentProcessor: ConsentProcessor
+    private lateinit var gicsConsentService: GicsConsentService
+
+    private lateinit var consentDomain: ConsentDomain
+    private lateinit var requestDate: Date
+    private lateinit var content: String
+    private lateinit var gicsBundle: Bundle
+    private lateinit var miiBundle: Bundle
+    private lateinit var provisions: List<ProvisionComponent>
+
+    @Setup(Level.Trial)
+    fun setup() {
+        consentProcessor =
+            ConsentProcessor(
+                AppConfigProperties(emptyList()),
+                gIcsConfigProperties,
+                JacksonConfig().jsonMapper(),
+                SharedFhirContext.fhirContext(),
+                MtbFileConsentService(),
+            )
+        gicsConsentService =
+            GicsConsentService(
+                gIcsConfigProperties,
+                RetryTemplate.builder().maxAttempts(1).build(),
+                RestTemplate(),
+                AppFhirConfig(),
+            )
+
+        consentDomain =
+            if (response.startsWith("fake_mv64e")) ConsentDomain.MODELLVORHABEN_64E else ConsentDomain.BROAD_CONSENT
+        requestDate = Date()
+
+        gicsBundle =
+            if (response.startsWith("SYNTHETIC_")) {
+                syntheticBundle(response.substringAfter("SYNTHETIC_").toInt())
+            } else {
+                parse(ClassPathResource(response).inputStream.readAllBytes().decodeToString())
+            }
+        content = SharedFhirContext.fhirContext().newJsonParser().encodeResourceToString(gicsBundle)
+        miiBundle = gicsConsentService.convertGicsResultToMiiBroadConsent(gicsBundle.copy())
+        provisions = gicsBundle.entry.map { it.resource as Consent }.flatMap { it.provision.provision }
+    }
+
+    private fun parse(json: String): Bundle = SharedFhirContext.fhirContext().newJsonParser().parseResource(Bundle::class.java, json)
+
+    /**
+     * Adds copies of the gICS policy consents with distinct policy codes, so the policy to look for
+     * is one of many.
+     */
+    private fun syntheticBundle(size: Int): Bundle {
+        val bundle = parse(ClassPathResource("fake_broadConsent_gics_response_permit.json").inputStream.readAllBytes().decodeToString())
+        val templates = bundle.entry.drop(1).map { it.resource as Consent }
+        var index = 0
+        while (bundle.entry.size < size) {
+            val consent = templates[index % templates.size].copy()
+            consent.id = "synthetic-$index"
+            (consent.policyRule.coding + consent.provision.provision.flatMap { it.code }.flatMap { it.coding })
+                .filter { it.system == gIcsConfigProperties.broadConsentPolicySystem }
+                .forEach { it.code = "${gIcsConfigProperties.broadConsentPolicySystem.removePrefix("urn:oid:")}.${1000 + index}" }
+            bundle.addEntry().setFullUrl("Consent/synthetic-$index").setResource(consent)
+            index++
+        }
+        bundle.total = bundle.entry.size
+        return bundle
+    }
+
+    @Benchmark
+    fun getProvisionTypeByPolicyCode(): Consent.ConsentProvisionType =
+        consentProcessor.getProvisionTypeByPolicyCode(gicsBundle, requestDate, consentDomain)
+
+    @Benchmark
+    fun checkProvisionExist(): Boolean =
+        consentProcessor.checkProvisionExist(
+            gIcsConfigProperties.broadConsentPolicyCode,
+            gIcsConfigProperties.broadConsentPolicySystem,
+            provisions,
+        )
+
+    @Benchmark
+    fun embedBroadConsentResources(): Mtb {
+        val mtb = Mtb.builder().patient(Patient.builder().id("P1").build()).build()
+        mtb.ensureMetaDataIsInitialized()
+        consentProcessor.embedBroadConsentResources(mtb, miiBundle)
+        return mtb
+    }
+
+    /**
+     * Baseline for [convertGicsResultToMiiBroadConsent], since conversion modifies the given bundle
+     */
+    @Benchmark
+    fun copyBundle(): Bundle = gicsBundle.copy()
+
+    @Benchmark
+    fun convertGicsResultToMiiBroadConsent(): Bundle = gicsConsentService.convertGicsResultToMiiBroadConsent(gicsBundle.copy())
+
+    @Benchmark
+    fun evaluate(): TtpConsentStatus = MiiBroadConsentEvaluator.evaluate(SharedFhirContext.fhirContext(), content)
+}
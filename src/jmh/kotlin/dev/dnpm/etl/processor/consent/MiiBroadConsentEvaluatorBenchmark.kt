@@ -0,0 +1,61 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent
+
+import ca.uhn.fhir.context.FhirContext
+import org.openjdk.jmh.annotations.*
+import org.springframework.core.io.ClassPathResource
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmarks for evaluation of MII broad consent responses using [MiiBroadConsentEvaluator] and
+ * [StreamingMiiBroadConsentEvaluator].
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class MiiBroadConsentEvaluatorBenchmark {
+    @Param(
+        "fake_broadConsent_mii_response_permit.json",
+        "fake_broadConsent_mii_response_deny.json",
+        "fake_broadConsent_gics_response_permit.json",
+    )
+    @JvmField
+    var response: String = ""
+
+    private val fhirContext = FhirContext.forR4()
+
+    private lateinit var content: String
+
+    @Setup(Level.Trial)
+    fun setup() {
+        content = ClassPathResource(response).inputStream.readAllBytes().decodeToString()
+    }
+
+    @Benchmark
+    fun evaluate(): TtpConsentStatus = MiiBroadConsentEvaluator.evaluate(fhirContext, content)
+
+    @Benchmark
+    fun evaluateStreaming(): TtpConsentStatus = StreamingMiiBroadConsentEvaluator.evaluate(content)
+}
@@ -0,0 +1,132 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2025-2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dev.dnpm.etl.processor.output
+
+import dev.dnpm.etl.processor.config.JacksonConfig
+import dev.pcvolkmer.mv64e.mtb.Mtb
+import org.apache.commons.codec.digest.DigestUtils
+import org.openjdk.jmh.annotations.*
+import org.openjdk.jmh.infra.Blackhole
+import org.springframework.core.io.ClassPathResource
+import tools.jackson.databind.node.ArrayNode
+import tools.jackson.databind.node.ObjectNode
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.security.DigestOutputStream
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmarks for serialization of an outgoing MTB file for fingerprint and sending, compared by
+ * bytes allocated per operation as reported by the GC profiler.
+ *
+ * `STRING` serializes into a string for each of both fingerprints and again for sending, `STREAMING`
+ * writes into the digest once and serializes again for sending, `PAYLOAD` uses the bytes of a single
+ * [MtbPayload] for fingerprint and sending. `MEDIUM` is the fake patient and `LARGE` contains each
+ * list of the fake patient 20 times.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class MtbPayloadBenchmark {
+    @Param("STRING", "STREAMING", "PAYLOAD")
+    @JvmField
+    var serialization: String = ""
+
+    @Param("MEDIUM", "LARGE")
+    @JvmField
+    var document: String = ""
+
+    private val jsonMapper = JacksonConfig().jsonMapper()
+
+    private lateinit var mtb: Mtb
+
+    @Setup(Level.Trial)
+    fun setup() {
+        val tree = jsonMapper.readTree(ClassPathResource("mv64e-mtb-fake-patient.json").inputStream.readAllBytes()) as ObjectNode
+        if (document == "LARGE") {
+            tree.properties().map { it.value }.filterIsInstance<ArrayNode>().forEach { list ->
+                val elements = list.toList()
+                repeat(19) { elements.forEach { list.add(it.deepCopy()) } }
+            }
+        }
+        mtb = jsonMapper.treeToValue(tree, Mtb::class.java)
+    }
+
+    @Benchmark
+    fun kafkaRecordValue(blackhole: Blackhole) {
+        when (serialization) {
+            "STRING" -> {
+                blackhole.consume(DigestUtils.sha256(jsonMapper.writeValueAsString(mtb)))
+                blackhole.consume(DigestUtils.sha256(jsonMapper.writeValueAsString(mtb)))
+                blackhole.consume(jsonMapper.writeValueAsBytes(mtb))
+            }
+
+            "STREAMING" -> {
+                blackhole.consume(streamingDigest())
+                blackhole.consume(jsonMapper.writeValueAsBytes(mtb))
+            }
+
+            else -> {
+                val payload = MtbPayload.of(mtb, jsonMapper)
+                blackhole.consume(payload.sha256())
+                // Record value uses the bytes of the payload
+                blackhole.consume(payload)
+            }
+        }
+    }
+
+    @Benchmark
+    fun httpBody(blackhole: Blackhole) {
+        // Request body is buffered by the request factory
+        val body = ByteArrayOutputStream()
+        when (serialization) {
+            "STRING" -> {
+                blackhole.consume(DigestUtils.sha256(jsonMapper.writeValueAsString(mtb)))
+                blackhole.consume(DigestUtils.sha256(jsonMapper.writeValueAsString(mtb)))
+                jsonMapper.writeValue(body, mtb)
+            }
+
+            "STREAMING" -> {
+                blackhole.consume(streamingDigest())
+                jsonMapper.writeValue(body, mtb)
+            }
+
+            else -> {
+                val payload = MtbPayload.of(mtb, jsonMapper)
+                blackhole.consume(payload.sha256())
+                payload.writeTo(body)
+            }
+        }
+        blackhole.consume(body)
+    }
+
+    private fun streamingDigest(): ByteArray {
+        val digest = DigestUtils.getSha256Digest()
+        DigestOutputStream(OutputStream.nullOutputStream(), digest).use {
+            jsonMapper.writeValue(it, mtb)
+        }
+        return digest.digest()
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import org.hl7.fhir.r4.model.Identifier
+import org.hl7.fhir.r4.model.Parameters
+import org.openjdk.jmh.annotations.*
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmarks for pseudonym generation and handling of gPAS responses using a number of synthetic
+ * patient ID variants.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class GeneratorBenchmark {
+    @Param("1000", "10000")
+    @JvmField
+    var variants: Int = 0
+
+    private val generator = AnonymizingGenerator()
+
+    private lateinit var patientIds: Array<String>
+    private lateinit var gpasResponses: Array<Parameters>
+    private lateinit var gpasPseudonyms: Array<String>
+    private var index = 0
+
+    @Setup(Level.Trial)
+    fun setup() {
+        patientIds = Array(variants) { UUID.nameUUIDFromBytes("patient-$it".toByteArray()).toString() }
+        // Every fourth pseudonym contains characters to be sanitized
+        gpasPseudonyms = Array(variants) { if (it % 4 == 0) "PSN:$it/${patientIds[it]}" else "PSN_${patientIds[it]}" }
+        gpasResponses = Array(variants) { gpasResponse(patientIds[it], gpasPseudonyms[it]) }
+    }
+
+    private fun next(): Int {
+        index = (index + 1) % variants
+        return index
+    }
+
+    @Benchmark
+    fun generate(): String = generator.generate(patientIds[next()])
+
+    @Benchmark
+    fun generateGenomDeTan(): String = generator.generateGenomDeTan(patientIds[next()])
+
+    @Benchmark
+    fun unwrapPseudonym(): String = GpasPseudonymGenerator.unwrapPseudonym(gpasResponses[next()], "pseudonym")
+
+    @Benchmark
+    fun sanitizeValue(): String = GpasPseudonymGenerator.sanitizeValue(gpasPseudonyms[next()])
+
+    private fun gpasResponse(
+        original: String,
+        pseudonym: String,
+    ): Parameters {
+        val parameters = Parameters()
+        parameters
+            .addParameter()
+            .setName("pseudonym")
+            .addPart(
+                Parameters.ParametersParameterComponent().setName("original").setValue(Identifier().setValue(original)),
+            ).addPart(
+                Parameters.ParametersParameterComponent().setName("target").setValue(Identifier().setValue("etl-processor")),
+            ).addPart(
+                Parameters.ParametersParameterComponent().setName("pseudonym").setValue(Identifier().setValue(pseudonym)),
+            )
+        return parameters
+    }
+}
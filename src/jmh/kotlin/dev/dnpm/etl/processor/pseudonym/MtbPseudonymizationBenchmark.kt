@@ -0,0 +1,77 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import dev.dnpm.etl.processor.config.JacksonConfig
+import dev.dnpm.etl.processor.config.PseudonymizeConfigProperties
+import dev.pcvolkmer.mv64e.mtb.Mtb
+import org.openjdk.jmh.annotations.*
+import org.springframework.core.io.ClassPathResource
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmarks for [pseudonymizeWith] and [anonymizeContentWith] using the fake patient with a number
+ * of synthetic patient ID variants.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class MtbPseudonymizationBenchmark {
+    @Param("1000", "10000")
+    @JvmField
+    var variants: Int = 0
+
+    private val jsonMapper = JacksonConfig().jsonMapper()
+    private val pseudonymizeService = PseudonymizeService(AnonymizingGenerator(), PseudonymizeConfigProperties(prefix = "BENCH"))
+    private val content = ClassPathResource("mv64e-mtb-fake-patient.json").inputStream.readAllBytes()
+
+    private lateinit var patientIds: Array<String>
+    private lateinit var mtb: Mtb
+    private var index = 0
+
+    @Setup(Level.Trial)
+    fun setupVariants() {
+        patientIds = Array(variants) { UUID.nameUUIDFromBytes("patient-$it".toByteArray()).toString() }
+    }
+
+    @Setup(Level.Invocation)
+    fun setup() {
+        index = (index + 1) % variants
+        mtb = jsonMapper.readValue(content, Mtb::class.java)
+        mtb.patient.id = patientIds[index]
+    }
+
+    @Benchmark
+    fun pseudonymizeWith(): Mtb {
+        mtb pseudonymizeWith pseudonymizeService
+        return mtb
+    }
+
+    @Benchmark
+    fun anonymizeContentWith(): Mtb {
+        mtb anonymizeContentWith pseudonymizeService
+        return mtb
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import com.jayway.jsonpath.JsonPath
+import com.jayway.jsonpath.PathNotFoundException
+import dev.dnpm.etl.processor.config.JacksonConfig
+import dev.pcvolkmer.mv64e.mtb.Coding
+import dev.pcvolkmer.mv64e.mtb.Mtb
+import dev.pcvolkmer.mv64e.mtb.MtbDiagnosis
+import dev.pcvolkmer.mv64e.mtb.Patient
+import org.openjdk.jmh.annotations.*
+import org.springframework.core.io.ClassPathResource
+import tools.jackson.databind.node.ArrayNode
+import tools.jackson.databind.node.ObjectNode
+import java.util.concurrent.TimeUnit
+
+/**
+ * Benchmarks for [TransformationService.transform] with a number of rules against documents of
+ * different size, using the compiled plan (`PLAN`) or one JsonPath pass per rule as before (`JSONPATH`).
+ *
+ * The first rule replaces the diagnosis code version, all other rules use existing paths but do not
+ * match any value. `SMALL` is a single diagnosis, `MEDIUM` is the fake patient and `LARGE` contains
+ * each list of the fake patient 20 times. Throughput and sampled times (including p0.99) are reported,
+ * bytes allocated per operation are reported by the GC profiler.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput, Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+open class TransformationServiceBenchmark {
+    @Param("0", "10", "100", "1000")
+    @JvmField
+    var rules: Int = 0
+
+    @Param("SMALL", "MEDIUM", "LARGE")
+    @JvmField
+    var document: String = ""
+
+    @Param("PLAN", "JSONPATH")
+    @JvmField
+    var engine: String = ""
+
+    private val jsonMapper = JacksonConfig().jsonMapper()
+
+    private lateinit var transformations: List<Transformation>
+    private lateinit var transformationService: TransformationService
+    private lateinit var mtb: Mtb
+
+    @Setup(Level.Trial)
+    fun setup() {
+        transformations =
+            List(rules) { index ->
+                if (index == 0) {
+                    Transformation.of("diagnoses[*].code.version") from "2025" to "2024"
+                } else {
+                    Transformation.of(PATHS[index % PATHS.size]) from "FROM_$index" to "TO_$index"
+                }
+            }
+        transformationService = TransformationService(jsonMapper, transformations)
+        mtb =
+            when (document) {
+                "SMALL" ->
+                    Mtb.builder()
+                        .patient(Patient.builder().id("P1").build())
+                        .diagnoses(
+                            listOf(
+                                MtbDiagnosis.builder()
+                                    .id("D1")
+                                    .code(Coding.builder().code("C53.8").version("2025").build())
+                                    .build(),
+                            ),
+                        ).build()
+
+                "MEDIUM" -> jsonMapper.readValue(fakePatient(), Mtb::class.java)
+                else -> jsonMapper.treeToValue(largeDocument(), Mtb::class.java)
+            }
+    }
+
+    private fun fakePatient(): ByteArray = ClassPathResource("mv64e-mtb-fake-patient.json").inputStream.readAllBytes()
+
+    private fun largeDocument(): ObjectNode {
+        val tree = jsonMapper.readTree(fakePatient()) as ObjectNode
+        tree.properties().map { it.value }.filterIsInstance<ArrayNode>().forEach { list ->
+            val elements = list.toList()
+            repeat(19) { elements.forEach { list.add(it.deepCopy()) } }
+        }
+        return tree
+    }
+
+    @Benchmark
+    fun transform(): Mtb =
+        if (engine == "PLAN") {
+            transformationService.transform(mtb)
+        } else {
+            transformUsingJsonPath(mtb)
+        }
+
+    private fun transformUsingJsonPath(mtbFile: Mtb): Mtb {
+        var json = jsonMapper.writeValueAsString(mtbFile)
+        transformations.forEach { transformation ->
+            val jsonPath = JsonPath.parse(json)
+            try {
+                val before = transformation.path.substringBeforeLast(".")
+                val last = transformation.path.substringAfterLast(".")
+                jsonPath.set(
+                    "$.$before.[?]$last",
+                    transformation.newValue.toString(),
+                    { it.item(HashMap::class.java)[last] == transformation.existingValue.toString() },
+                )
+            } catch (_: PathNotFoundException) {
+                // Ignore
+            }
+            json = jsonPath.jsonString()
+        }
+        return jsonMapper.readValue(json, Mtb::class.java)
+    }
+
+    companion object {
+        private val PATHS =
+            listOf(
+                "diagnoses[*].code.code",
+                "diagnoses[*].topography.code",
+                "specimens[*].type.code",
+                "histologyReports[*].results.tumorMorphology.value.code",
+                "patient.gender.code",
+            )
+    }
+}
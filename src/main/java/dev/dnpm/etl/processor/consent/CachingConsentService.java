@@ -0,0 +1,157 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent;
+
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+import org.hl7.fhir.r4.model.Bundle;
+import org.jspecify.annotations.NonNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consent service using a {@link ConsentCache} for results of another consent service.
+ *
+ * <p>Failed lookups are not cached. Bundles are copied, so changes by the caller do not modify
+ * cached entries.
+ *
+ * <p>If degraded mode of the cache is enabled and a lookup fails, the last known result is used if
+ * available. Bundles of stale results are tagged and can be identified using {@link
+ * #isStale(Bundle)}. Stale results are revalidated asynchronously.
+ *
+ * @since 0.17.0
+ */
+public class CachingConsentService implements IConsentService {
+
+  public static final String STALE_TAG_SYSTEM = "urn:etl-processor:consent-cache";
+  public static final String STALE_TAG_CODE = "stale";
+
+  private static final Logger log = LoggerFactory.getLogger(CachingConsentService.class);
+
+  private final IConsentService delegate;
+  private final ConsentCache consentCache;
+  private final Executor revalidationExecutor;
+  private final Set<ConsentCache.Key> revalidating = ConcurrentHashMap.newKeySet();
+
+  public CachingConsentService(IConsentService delegate, ConsentCache consentCache) {
+    this(delegate, consentCache, runnable -> Thread.ofVirtual().start(runnable));
+  }
+
+  public CachingConsentService(
+      IConsentService delegate, ConsentCache consentCache, Executor revalidationExecutor) {
+    this.delegate = delegate;
+    this.consentCache = consentCache;
+    this.revalidationExecutor = revalidationExecutor;
+  }
+
+  /**
+   * Checks if the bundle is a stale result, used in degraded mode
+   *
+   * @param bundle the consent bundle
+   * @return true if the bundle is a stale result
+   */
+  public static boolean isStale(Bundle bundle) {
+    return null != bundle.getMeta().getTag(STALE_TAG_SYSTEM, STALE_TAG_CODE);
+  }
+
+  @Override
+  @NonNull
+  public TtpConsentStatus getTtpBroadConsentStatus(@NonNull String personIdentifierValue) {
+    var key = ConsentCache.Key.broadConsentStatus(personIdentifierValue);
+    var cached = consentCache.get(key, TtpConsentStatus.class);
+    if (cached != null) {
+      return cached;
+    }
+    var result = delegate.getTtpBroadConsentStatus(personIdentifierValue);
+    if (result != TtpConsentStatus.FAILED_TO_ASK) {
+      consentCache.put(key, result);
+      return result;
+    }
+    if (consentCache.isDegradedModeEnabled()) {
+      var stale = consentCache.getStale(key, TtpConsentStatus.class);
+      if (stale != null) {
+        log.warn("Broad consent status request failed - using last known consent status");
+        revalidate(key, () -> delegate.getTtpBroadConsentStatus(personIdentifierValue));
+        return stale;
+      }
+    }
+    return result;
+  }
+
+  @Override
+  @NonNull
+  public Bundle getConsent(
+      @NonNull String personIdentifierValue,
+      @NonNull Date requestDate,
+      @NonNull ConsentDomain consentDomain) {
+    var key = ConsentCache.Key.consent(personIdentifierValue, requestDate, consentDomain);
+    var cached = consentCache.get(key, Bundle.class);
+    if (cached != null) {
+      return cached.copy();
+    }
+    try {
+      var result = delegate.getConsent(personIdentifierValue, requestDate, consentDomain);
+      consentCache.put(key, result.copy());
+      return result;
+    } catch (RuntimeException e) {
+      var stale =
+          consentCache.isDegradedModeEnabled() ? consentCache.getStale(key, Bundle.class) : null;
+      if (null == stale) {
+        throw e;
+      }
+      log.warn("Consent request failed - using last known consent: {}", e.getMessage());
+      revalidate(key, () -> delegate.getConsent(personIdentifierValue, requestDate, consentDomain));
+      var result = stale.copy();
+      result.getMeta().addTag(STALE_TAG_SYSTEM, STALE_TAG_CODE, "Stale consent");
+      return result;
+    }
+  }
+
+  private void revalidate(ConsentCache.Key key, Supplier<Object> lookup) {
+    if (!revalidating.add(key)) {
+      // Revalidation already in progress
+      return;
+    }
+    try {
+      revalidationExecutor.execute(
+          () -> {
+            try {
+              var result = lookup.get();
+              if (result instanceof Bundle bundle) {
+                consentCache.put(key, bundle.copy());
+              } else if (result != TtpConsentStatus.FAILED_TO_ASK) {
+                consentCache.put(key, result);
+              }
+            } catch (RuntimeException e) {
+              log.debug("Revalidation of consent failed", e);
+            } finally {
+              revalidating.remove(key);
+            }
+          });
+    } catch (RuntimeException e) {
+      revalidating.remove(key);
+      log.debug("Cannot revalidate consent", e);
+    }
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.jspecify.annotations.NonNull;
+import org.jspecify.annotations.Nullable;
+
+/**
+ * In-memory cache for results of consent lookups with time to live and maximum number of entries.
+ * Consent lookups are cached per person, consent domain and day of request date.
+ *
+ * <p>If a maximum staleness is configured, the last known result for each person and consent
+ * domain is kept for that duration and can be used in case of failed lookups.
+ *
+ * <p>The cache is local to this instance. Invalidation does not affect other instances, which keep
+ * using cached results until the time to live has elapsed.
+ *
+ * @since 0.17.0
+ */
+public class ConsentCache implements MeterBinder {
+
+  private final Duration ttl;
+  private final int maxSize;
+  private final Duration maxStaleness;
+  private final Clock clock;
+  private final Map<Key, Entry> entries;
+  private final Map<Key, Entry> lastKnown;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong staleHits = new AtomicLong();
+
+  public ConsentCache(Duration ttl, int maxSize) {
+    this(ttl, maxSize, Duration.ZERO, Clock.systemUTC());
+  }
+
+  public ConsentCache(Duration ttl, int maxSize, Clock clock) {
+    this(ttl, maxSize, Duration.ZERO, clock);
+  }
+
+  public ConsentCache(Duration ttl, int maxSize, Duration maxStaleness) {
+    this(ttl, maxSize, maxStaleness, Clock.systemUTC());
+  }
+
+  public ConsentCache(Duration ttl, int maxSize, Duration maxStaleness, Clock clock) {
+    this.ttl = ttl;
+    this.maxSize = maxSize;
+    this.maxStaleness = maxStaleness;
+    this.clock = clock;
+    this.entries = boundedMap(maxSize);
+    this.lastKnown = boundedMap(maxSize);
+  }
+
+  private static Map<Key, Entry> boundedMap(int maxSize) {
+    return new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+        return size() > maxSize;
+      }
+    };
+  }
+
+  /**
+   * Get cached value of given type
+   *
+   * @param key the cache key
+   * @param type the expected type of the value
+   * @return the cached value or null if there is no valid entry
+   */
+  public synchronized <T> @Nullable T get(Key key, Class<T> type) {
+    var entry = entries.get(key);
+    if (entry == null || !type.isInstance(entry.value())) {
+      misses.incrementAndGet();
+      return null;
+    }
+    if (entry.storedAt().plus(ttl).isBefore(clock.instant())) {
+      entries.remove(key);
+      misses.incrementAndGet();
+      return null;
+    }
+    hits.incrementAndGet();
+    return type.cast(entry.value());
+  }
+
+  /**
+   * Get last known value of given type for person and consent domain of given key, regardless of
+   * the request day, if it is not older than the maximum staleness
+   *
+   * @param key the cache key
+   * @param type the expected type of the value
+   * @return the last known value or null if there is none
+   */
+  public synchronized <T> @Nullable T getStale(Key key, Class<T> type) {
+    var entry = lastKnown.get(key.withoutRequestDay());
+    if (entry == null || !type.isInstance(entry.value())) {
+      return null;
+    }
+    if (!entry.storedAt().plus(maxStaleness).isAfter(clock.instant())) {
+      lastKnown.remove(key.withoutRequestDay());
+      return null;
+    }
+    staleHits.incrementAndGet();
+    return type.cast(entry.value());
+  }
+
+  public synchronized void put(Key key, Object value) {
+    if (maxSize <= 0) {
+      return;
+    }
+    var entry = new Entry(value, clock.instant());
+    entries.put(key, entry);
+    if (isDegradedModeEnabled()) {
+      lastKnown.put(key.withoutRequestDay(), entry);
+    }
+  }
+
+  /**
+   * Degraded mode is enabled if there is a maximum staleness for last known values
+   *
+   * @return true if last known values are kept
+   */
+  public boolean isDegradedModeEnabled() {
+    return maxStaleness.isPositive();
+  }
+
+  /**
+   * Removes all entries for given person
+   *
+   * @param personIdentifierValue the person identifier
+   * @return number of removed entries
+   */
+  public synchronized int invalidate(String personIdentifierValue) {
+    var sizeBefore = entries.size();
+    entries.keySet().removeIf(key -> key.personIdentifierValue().equals(personIdentifierValue));
+    lastKnown.keySet().removeIf(key -> key.personIdentifierValue().equals(personIdentifierValue));
+    return sizeBefore - entries.size();
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+    lastKnown.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public long hits() {
+    return hits.get();
+  }
+
+  public long misses() {
+    return misses.get();
+  }
+
+  public long staleHits() {
+    return staleHits.get();
+  }
+
+  public Duration getTtl() {
+    return ttl;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public Duration getMaxStaleness() {
+    return maxStaleness;
+  }
+
+  @Override
+  public void bindTo(@NonNull MeterRegistry registry) {
+    FunctionCounter.builder("etl.consent.cache.requests", this, ConsentCache::hits)
+        .description("Number of consent cache lookups")
+        .tag("result", "hit")
+        .register(registry);
+    FunctionCounter.builder("etl.consent.cache.requests", this, ConsentCache::misses)
+        .description("Number of consent cache lookups")
+        .tag("result", "miss")
+        .register(registry);
+    FunctionCounter.builder("etl.consent.cache.requests", this, ConsentCache::staleHits)
+        .description("Number of consent cache lookups")
+        .tag("result", "stale")
+        .register(registry);
+    Gauge.builder("etl.consent.cache.size", this, ConsentCache::size)
+        .description("Number of cached consent lookups")
+        .register(registry);
+  }
+
+  /**
+   * Key of cached consent lookups
+   *
+   * @param personIdentifierValue the person identifier
+   * @param consentDomain the consent domain or null for broad consent status lookups
+   * @param requestDay the day of request date or null for broad consent status lookups
+   */
+  public record Key(
+      String personIdentifierValue,
+      @Nullable ConsentDomain consentDomain,
+      @Nullable LocalDate requestDay) {
+
+    public static Key broadConsentStatus(String personIdentifierValue) {
+      return new Key(personIdentifierValue, null, null);
+    }
+
+    public static Key consent(
+        String personIdentifierValue, Date requestDate, ConsentDomain consentDomain) {
+      // gICS uses request dates with precision of a day
+      return new Key(
+          personIdentifierValue,
+          consentDomain,
+          LocalDate.ofInstant(requestDate.toInstant(), ZoneId.systemDefault()));
+    }
+
+    Key withoutRequestDay() {
+      return new Key(personIdentifierValue, consentDomain, null);
+    }
+  }
+
+  private record Entry(Object value, Instant storedAt) {}
+}
@@ -22,9 +22,15 @@ package dev.dnpm.etl.processor.consent;
 
 import dev.dnpm.etl.processor.config.AppFhirConfig;
 import dev.dnpm.etl.processor.config.GIcsConfigProperties;
+import dev.dnpm.etl.processor.config.GIcsRequestFormat;
+import dev.dnpm.etl.processor.resilience.CallNotPermittedException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import kotlin.random.Random;
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -59,6 +65,10 @@ public class GicsConsentService extends AbstractConsentService {
   private final RetryTemplate retryTemplate;
   private final RestTemplate restTemplate;
   private final GIcsConfigProperties gIcsConfigProperties;
+  private final Map<String, URI> endpointUris = new HashMap<>();
+  private final @Nullable GicsRequestTemplate isConsentedTemplate;
+  private final Map<ConsentDomain, GicsRequestTemplate> policyStatesTemplates =
+      new EnumMap<>(ConsentDomain.class);
 
   public GicsConsentService(
       GIcsConfigProperties gIcsConfigProperties,
@@ -70,6 +80,35 @@ public class GicsConsentService extends AbstractConsentService {
     this.retryTemplate = retryTemplate;
     this.restTemplate = restTemplate;
     this.gIcsConfigProperties = gIcsConfigProperties;
+
+    // Resolve endpoint URIs once, invalid URIs will be reported on request
+    for (var endpoint : List.of(IS_CONSENTED_ENDPOINT, IS_POLICY_STATES_FOR_PERSON_ENDPOINT)) {
+      try {
+        endpointUris.put(endpoint, endpointUri(endpoint));
+      } catch (URISyntaxException e) {
+        log.debug("Cannot resolve gICS endpoint URI for '{}'", endpoint, e);
+      }
+    }
+
+    if (GIcsRequestFormat.JSON == gIcsConfigProperties.getRequestFormat()) {
+      this.isConsentedTemplate =
+          GicsRequestTemplate.compile(
+              fhirContext,
+              (personIdentifierValue, requestDate) ->
+                  getFhirRequestParameters(personIdentifierValue));
+      for (var consentDomain : ConsentDomain.values()) {
+        policyStatesTemplates.put(
+            consentDomain,
+            GicsRequestTemplate.compile(
+                fhirContext,
+                (personIdentifierValue, requestDate) ->
+                    buildRequestParameterCurrentPolicyStatesForPerson(
+                        personIdentifierValue, requestDate, consentDomain)));
+      }
+    } else {
+      this.isConsentedTemplate = null;
+    }
+
     log.info("GicsConsentService initialized...");
   }
 
@@ -143,11 +182,23 @@ public class GicsConsentService extends AbstractConsentService {
     return urlBuilder.build();
   }
 
+  private URI resolvedEndpointUri(String endpoint) throws URISyntaxException {
+    var uri = endpointUris.get(endpoint);
+    if (null != uri) {
+      return uri;
+    }
+    return endpointUri(endpoint);
+  }
+
   private HttpHeaders headersWithHttpBasicAuth() {
     assert this.gIcsConfigProperties.getUri() != null;
 
     var headers = new HttpHeaders();
-    headers.setContentType(MediaType.APPLICATION_XML);
+    if (GIcsRequestFormat.JSON == this.gIcsConfigProperties.getRequestFormat()) {
+      headers.setContentType(MediaType.APPLICATION_JSON);
+    } else {
+      headers.setContentType(MediaType.APPLICATION_XML);
+    }
 
     if (StringUtils.isBlank(this.gIcsConfigProperties.getUsername())
         || StringUtils.isBlank(this.gIcsConfigProperties.getPassword())) {
@@ -161,15 +212,21 @@ public class GicsConsentService extends AbstractConsentService {
 
   @Nullable
   protected String callGicsApi(Parameters parameter, String endpoint) {
-    var parameterAsXml = fhirContext.newXmlParser().encodeResourceToString(parameter);
+    if (GIcsRequestFormat.JSON == this.gIcsConfigProperties.getRequestFormat()) {
+      return callGicsApi(fhirContext.newJsonParser().encodeResourceToString(parameter), endpoint);
+    }
+    return callGicsApi(fhirContext.newXmlParser().encodeResourceToString(parameter), endpoint);
+  }
+
+  @Nullable
+  protected String callGicsApi(String requestBody, String endpoint) {
     HttpEntity<String> requestEntity =
-        new HttpEntity<>(parameterAsXml, this.headersWithHttpBasicAuth());
+        new HttpEntity<>(requestBody, this.headersWithHttpBasicAuth());
     try {
+      var uri = resolvedEndpointUri(endpoint);
       var responseEntity =
           retryTemplate.execute(
-              ctx ->
-                  restTemplate.exchange(
-                      endpointUri(endpoint), HttpMethod.POST, requestEntity, String.class));
+              ctx -> restTemplate.exchange(uri, HttpMethod.POST, requestEntity, String.class));
 
       if (responseEntity.getStatusCode().is2xxSuccessful()) {
         return responseEntity.getBody();
@@ -186,6 +243,13 @@ public class GicsConsentService extends AbstractConsentService {
       log.error(msg);
       return null;
 
+    } catch (CallNotPermittedException callNotPermittedException) {
+      var msg =
+          String.format(
+              "Get consents status request not permitted: '%s",
+              callNotPermittedException.getMessage());
+      log.error(msg);
+      return null;
     } catch (TerminatedRetryException terminatedRetryException) {
       var msg =
           String.format(
@@ -204,21 +268,29 @@ public class GicsConsentService extends AbstractConsentService {
   @NonNull
   public TtpConsentStatus getTtpBroadConsentStatus(@NonNull String personIdentifierValue) {
     var consentStatusResponse =
-        callGicsApi(
-            getFhirRequestParameters(personIdentifierValue),
-            GicsConsentService.IS_CONSENTED_ENDPOINT);
+        null != isConsentedTemplate
+            ? callGicsApi(
+                isConsentedTemplate.render(personIdentifierValue),
+                GicsConsentService.IS_CONSENTED_ENDPOINT)
+            : callGicsApi(
+                getFhirRequestParameters(personIdentifierValue),
+                GicsConsentService.IS_CONSENTED_ENDPOINT);
     return evaluateConsentResponse(consentStatusResponse);
   }
 
   protected Bundle currentConsentForPersonAndTemplate(
       String personIdentifierValue, ConsentDomain consentDomain, Date requestDate) {
 
-    var requestParameter =
-        buildRequestParameterCurrentPolicyStatesForPerson(
-            personIdentifierValue, requestDate, consentDomain);
-
+    var template = policyStatesTemplates.get(consentDomain);
     var consentDataSerialized =
-        callGicsApi(requestParameter, GicsConsentService.IS_POLICY_STATES_FOR_PERSON_ENDPOINT);
+        null != template
+            ? callGicsApi(
+                template.render(personIdentifierValue, requestDate),
+                GicsConsentService.IS_POLICY_STATES_FOR_PERSON_ENDPOINT)
+            : callGicsApi(
+                buildRequestParameterCurrentPolicyStatesForPerson(
+                    personIdentifierValue, requestDate, consentDomain),
+                GicsConsentService.IS_POLICY_STATES_FOR_PERSON_ENDPOINT);
 
     if (consentDataSerialized == null) {
       // error occurred - should not process further!
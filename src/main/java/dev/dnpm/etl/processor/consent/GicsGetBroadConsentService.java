@@ -22,6 +22,7 @@ package dev.dnpm.etl.processor.consent;
 
 import dev.dnpm.etl.processor.config.AppFhirConfig;
 import dev.dnpm.etl.processor.config.GIcsConfigProperties;
+import dev.dnpm.etl.processor.resilience.CallNotPermittedException;
 import java.net.URISyntaxException;
 import java.util.Date;
 import org.apache.hc.core5.net.URIBuilder;
@@ -138,6 +139,13 @@ public class GicsGetBroadConsentService extends AbstractConsentService {
       log.error(msg);
       return null;
 
+    } catch (CallNotPermittedException callNotPermittedException) {
+      var msg =
+          String.format(
+              "Get consents status request not permitted: '%s",
+              callNotPermittedException.getMessage());
+      log.error(msg);
+      return null;
     } catch (TerminatedRetryException terminatedRetryException) {
       var msg =
           String.format(
@@ -154,6 +162,6 @@ public class GicsGetBroadConsentService extends AbstractConsentService {
 
   @Override
   protected TtpConsentStatus evaluateConsentResponse(@Nullable String consentStatusResponse) {
-    return MiiBroadConsentEvaluator.evaluate(this.fhirContext, consentStatusResponse);
+    return StreamingMiiBroadConsentEvaluator.evaluate(consentStatusResponse);
   }
 }
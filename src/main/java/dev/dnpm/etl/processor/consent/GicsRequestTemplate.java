@@ -0,0 +1,158 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2023-2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import org.hl7.fhir.r4.model.Parameters;
+import org.jspecify.annotations.NullMarked;
+import tools.jackson.core.io.JsonStringEncoder;
+
+/**
+ * Precompiled JSON request body for gICS requests.
+ *
+ * <p>The template is created once by encoding request parameters with placeholder values. Rendering
+ * a request body only substitutes the person identifier and the request date.
+ *
+ * @since 0.17.0
+ */
+@NullMarked
+public final class GicsRequestTemplate {
+
+  static final String PERSON_IDENTIFIER_PLACEHOLDER = "__personIdentifier__";
+
+  private static final LocalDate REQUEST_DATE_PLACEHOLDER = LocalDate.of(2999, 12, 31);
+
+  private enum Variable {
+    PERSON_IDENTIFIER(PERSON_IDENTIFIER_PLACEHOLDER),
+    REQUEST_DATE(formatDate(REQUEST_DATE_PLACEHOLDER));
+
+    private final String placeholder;
+
+    Variable(String placeholder) {
+      this.placeholder = placeholder;
+    }
+  }
+
+  private final List<String> fragments;
+  private final List<Variable> variables;
+  private final int estimatedLength;
+
+  private GicsRequestTemplate(List<String> fragments, List<Variable> variables) {
+    this.fragments = List.copyOf(fragments);
+    this.variables = List.copyOf(variables);
+    this.estimatedLength = fragments.stream().mapToInt(String::length).sum() + 64;
+  }
+
+  /**
+   * Compiles a template using the given request parameters
+   *
+   * @param fhirContext FHIR context
+   * @param parameters function to create request parameters for person identifier and request date
+   * @return the compiled template
+   */
+  public static GicsRequestTemplate compile(
+      FhirContext fhirContext, BiFunction<String, Date, Parameters> parameters) {
+    var requestDate =
+        Date.from(REQUEST_DATE_PLACEHOLDER.atStartOfDay(ZoneId.systemDefault()).toInstant());
+    var encoded =
+        fhirContext
+            .newJsonParser()
+            .encodeResourceToString(parameters.apply(PERSON_IDENTIFIER_PLACEHOLDER, requestDate));
+    return compile(encoded);
+  }
+
+  static GicsRequestTemplate compile(String encoded) {
+    // Variables ordered by position in encoded request
+    var occurrences = new TreeMap<Integer, Variable>();
+    for (var variable : Variable.values()) {
+      var index = encoded.indexOf(variable.placeholder);
+      if (index < 0) {
+        continue;
+      }
+      if (encoded.indexOf(variable.placeholder, index + 1) >= 0) {
+        throw new IllegalStateException("Request template contains placeholder more than once");
+      }
+      occurrences.put(index, variable);
+    }
+    if (!occurrences.containsValue(Variable.PERSON_IDENTIFIER)) {
+      throw new IllegalStateException("Request template must contain person identifier");
+    }
+
+    var fragments = new ArrayList<String>();
+    var variables = new ArrayList<Variable>();
+    var position = 0;
+    for (var occurrence : occurrences.entrySet()) {
+      fragments.add(encoded.substring(position, occurrence.getKey()));
+      variables.add(occurrence.getValue());
+      position = occurrence.getKey() + occurrence.getValue().placeholder.length();
+    }
+    fragments.add(encoded.substring(position));
+
+    return new GicsRequestTemplate(fragments, variables);
+  }
+
+  /**
+   * Renders the request body for a template without request date
+   *
+   * @param personIdentifierValue the person identifier
+   * @return JSON request body
+   */
+  public String render(String personIdentifierValue) {
+    if (variables.contains(Variable.REQUEST_DATE)) {
+      throw new IllegalStateException("Request template requires request date");
+    }
+    return render(personIdentifierValue, new Date());
+  }
+
+  /**
+   * Renders the request body
+   *
+   * @param personIdentifierValue the person identifier
+   * @param requestDate the request date, formatted as date in system default time zone
+   * @return JSON request body
+   */
+  public String render(String personIdentifierValue, Date requestDate) {
+    var result = new StringBuilder(estimatedLength);
+    for (var i = 0; i < variables.size(); i++) {
+      result.append(fragments.get(i));
+      switch (variables.get(i)) {
+        case PERSON_IDENTIFIER ->
+            JsonStringEncoder.getInstance().quoteAsString(personIdentifierValue, result);
+        case REQUEST_DATE ->
+            result.append(
+                formatDate(LocalDate.ofInstant(requestDate.toInstant(), ZoneId.systemDefault())));
+      }
+    }
+    return result.append(fragments.getLast()).toString();
+  }
+
+  private static String formatDate(LocalDate date) {
+    return DateTimeFormatter.ISO_LOCAL_DATE.format(date);
+  }
+}
@@ -0,0 +1,248 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2023-2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import org.jspecify.annotations.NullMarked;
+import org.jspecify.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import tools.jackson.core.JsonParser;
+import tools.jackson.core.JsonToken;
+import tools.jackson.databind.json.JsonMapper;
+
+/**
+ * Evaluates MII Broad Consent by scanning the gICS response using a streaming JSON parser.
+ *
+ * <p>In contrast to {@link MiiBroadConsentEvaluator}, no FHIR resource tree is created. Only the
+ * provisions of consent resources are inspected, any other content is skipped. Like {@link
+ * MiiBroadConsentEvaluator}, the last provision found for a policy wins, so all entries of the
+ * bundle are scanned. Content following the entries is skipped.
+ *
+ * @since 0.17.0
+ */
+@NullMarked
+public class StreamingMiiBroadConsentEvaluator {
+
+  private static final Logger log =
+      LoggerFactory.getLogger(StreamingMiiBroadConsentEvaluator.class);
+
+  private static final JsonMapper JSON_MAPPER = JsonMapper.builder().build();
+
+  private enum Policy {
+    MDAT_STORE_AND_PROCESS("2.16.840.1.113883.3.1937.777.24.5.3.7"),
+    MDAT_RESEARCH_USE("2.16.840.1.113883.3.1937.777.24.5.3.8"),
+    PATDAT_STORE_AND_USE("2.16.840.1.113883.3.1937.777.24.5.3.1");
+
+    private final String code;
+
+    Policy(String code) {
+      this.code = code;
+    }
+
+    static @Nullable Policy forCode(@Nullable String code) {
+      for (var policy : values()) {
+        if (policy.code.equals(code)) {
+          return policy;
+        }
+      }
+      return null;
+    }
+  }
+
+  private StreamingMiiBroadConsentEvaluator() {
+    // No content
+  }
+
+  /**
+   * Evaluates MII Broad Consent
+   *
+   * @param consentStatusResponse Nullable String containing FHIR String
+   * @return consent status
+   */
+  public static TtpConsentStatus evaluate(@Nullable String consentStatusResponse) {
+    if (null == consentStatusResponse) {
+      return TtpConsentStatus.FAILED_TO_ASK;
+    }
+    try (var parser = JSON_MAPPER.createParser(consentStatusResponse)) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        return TtpConsentStatus.FAILED_TO_ASK;
+      }
+
+      var policies = new EnumMap<Policy, Boolean>(Policy.class);
+      String resourceType = null;
+      while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+        var name = parser.currentName();
+        var token = parser.nextToken();
+        if ("resourceType".equals(name) && token == JsonToken.VALUE_STRING) {
+          resourceType = parser.getValueAsString();
+        } else if ("entry".equals(name) && token == JsonToken.START_ARRAY) {
+          readEntries(parser, policies);
+          if ("Bundle".equals(resourceType)) {
+            // Remaining content cannot change the result
+            break;
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+
+      if (!"Bundle".equals(resourceType)) {
+        return TtpConsentStatus.FAILED_TO_ASK;
+      }
+      return status(policies);
+    } catch (Exception e) {
+      log.error("failed to parse and analyze response as MII Broad Consent.", e);
+    }
+    return TtpConsentStatus.FAILED_TO_ASK;
+  }
+
+  private static TtpConsentStatus status(Map<Policy, Boolean> policies) {
+    if (Boolean.TRUE.equals(policies.get(Policy.MDAT_STORE_AND_PROCESS))
+        && Boolean.TRUE.equals(policies.get(Policy.MDAT_RESEARCH_USE))) {
+      return TtpConsentStatus.BROAD_CONSENT_GIVEN;
+    }
+    if (Boolean.TRUE.equals(policies.get(Policy.PATDAT_STORE_AND_USE))) {
+      return TtpConsentStatus.BROAD_CONSENT_GIVEN;
+    }
+    return TtpConsentStatus.BROAD_CONSENT_MISSING_OR_REJECTED;
+  }
+
+  /** Reads all bundle entries, later consent resources override policies of earlier ones */
+  private static void readEntries(JsonParser parser, Map<Policy, Boolean> policies) {
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (parser.currentToken() != JsonToken.START_OBJECT) {
+        parser.skipChildren();
+        continue;
+      }
+      while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+        var name = parser.currentName();
+        if (parser.nextToken() == JsonToken.START_OBJECT && "resource".equals(name)) {
+          readResource(parser, policies);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+  }
+
+  /** Reads a resource and applies found policies if it is a consent resource */
+  private static void readResource(JsonParser parser, Map<Policy, Boolean> policies) {
+    var found = new EnumMap<Policy, Boolean>(Policy.class);
+    String resourceType = null;
+    while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+      var name = parser.currentName();
+      var token = parser.nextToken();
+      if ("resourceType".equals(name) && token == JsonToken.VALUE_STRING) {
+        resourceType = parser.getValueAsString();
+      } else if ("provision".equals(name) && token == JsonToken.START_OBJECT) {
+        readProvision(parser, found);
+      } else {
+        parser.skipChildren();
+      }
+    }
+    if ("Consent".equals(resourceType)) {
+      policies.putAll(found);
+    }
+  }
+
+  /** Reads the top level provision and its direct sub provisions */
+  private static void readProvision(JsonParser parser, Map<Policy, Boolean> found) {
+    while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+      var name = parser.currentName();
+      var token = parser.nextToken();
+      if ("provision".equals(name) && token == JsonToken.START_ARRAY) {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          if (parser.currentToken() == JsonToken.START_OBJECT) {
+            readSubProvision(parser, found);
+          } else {
+            parser.skipChildren();
+          }
+        }
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  /** Reads a sub provision, the provision type may appear before or after its codes */
+  private static void readSubProvision(JsonParser parser, Map<Policy, Boolean> found) {
+    var policies = EnumSet.noneOf(Policy.class);
+    var permit = false;
+    while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+      var name = parser.currentName();
+      var token = parser.nextToken();
+      if ("type".equals(name) && token == JsonToken.VALUE_STRING) {
+        permit = "permit".equals(parser.getValueAsString());
+      } else if ("code".equals(name) && token == JsonToken.START_ARRAY) {
+        readCodes(parser, policies);
+      } else {
+        parser.skipChildren();
+      }
+    }
+    for (var policy : policies) {
+      found.put(policy, permit);
+    }
+  }
+
+  /** Reads codeable concepts and collects policies of all codings */
+  private static void readCodes(JsonParser parser, Set<Policy> policies) {
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (parser.currentToken() != JsonToken.START_OBJECT) {
+        parser.skipChildren();
+        continue;
+      }
+      while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+        var name = parser.currentName();
+        var token = parser.nextToken();
+        if ("coding".equals(name) && token == JsonToken.START_ARRAY) {
+          readCodings(parser, policies);
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+  }
+
+  private static void readCodings(JsonParser parser, Set<Policy> policies) {
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+      if (parser.currentToken() != JsonToken.START_OBJECT) {
+        parser.skipChildren();
+        continue;
+      }
+      while (parser.nextToken() == JsonToken.PROPERTY_NAME) {
+        var name = parser.currentName();
+        var token = parser.nextToken();
+        if ("code".equals(name) && token == JsonToken.VALUE_STRING) {
+          var policy = Policy.forCode(parser.getValueAsString());
+          if (null != policy) {
+            policies.add(policy);
+          }
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+  }
+}
@@ -43,10 +43,11 @@ import org.springframework.web.client.HttpClientErrorException.BadRequest;
 import org.springframework.web.client.HttpClientErrorException.Unauthorized;
 import org.springframework.web.client.RestTemplate;
 
-public class GpasPseudonymGenerator implements Generator {
+public class GpasPseudonymGenerator implements Generator, AutoCloseable {
 
   private final FhirContext r4Context;
   private final @Nullable String gPasUrl;
+  private final @Nullable GpasLoadBalancer loadBalancer;
   private final HttpHeaders httpHeader;
   private final RetryTemplate retryTemplate;
   private final Logger log = LoggerFactory.getLogger(GpasPseudonymGenerator.class);
@@ -63,9 +64,25 @@ public class GpasPseudonymGenerator implements Generator {
       RetryTemplate retryTemplate,
       RestTemplate restTemplate,
       AppFhirConfig appFhirConfig) {
+    this(gpasCfg, retryTemplate, restTemplate, appFhirConfig, null);
+  }
+
+  /**
+   * Creates a generator using the given load balancer to distribute requests to multiple gPAS
+   * instances
+   *
+   * @since 0.17.0
+   */
+  public GpasPseudonymGenerator(
+      GPasConfigProperties gpasCfg,
+      RetryTemplate retryTemplate,
+      RestTemplate restTemplate,
+      AppFhirConfig appFhirConfig,
+      @Nullable GpasLoadBalancer loadBalancer) {
     this.retryTemplate = retryTemplate;
     this.restTemplate = restTemplate;
     this.gPasUrl = gpasCfg.getUri();
+    this.loadBalancer = loadBalancer;
     this.pidPsnDomain = gpasCfg.getPatientDomain();
     this.genomDeTanDomain = gpasCfg.getGenomDeTanDomain();
     this.r4Context = appFhirConfig.fhirContext();
@@ -74,6 +91,18 @@ public class GpasPseudonymGenerator implements Generator {
     log.debug("{} has been initialized", this.getClass().getName());
   }
 
+  /**
+   * Shuts down the executor of the load balancer, if any
+   *
+   * @since 0.17.0
+   */
+  @Override
+  public void close() {
+    if (null != loadBalancer) {
+      loadBalancer.close();
+    }
+  }
+
   @Override
   @NonNull
   public String generate(@NonNull String id) {
@@ -150,11 +179,16 @@ public class GpasPseudonymGenerator implements Generator {
     HttpEntity<String> requestEntity = new HttpEntity<>(gPasRequestBody, this.httpHeader);
 
     try {
-      var targetUrl = buildRequestUrl(apiEndpoint);
-      ResponseEntity<String> responseEntity =
-          retryTemplate.execute(
-              ctx ->
-                  restTemplate.exchange(targetUrl, HttpMethod.POST, requestEntity, String.class));
+      ResponseEntity<String> responseEntity;
+      if (null == loadBalancer) {
+        var targetUrl = buildRequestUrl(apiEndpoint);
+        responseEntity =
+            retryTemplate.execute(
+                ctx ->
+                    restTemplate.exchange(targetUrl, HttpMethod.POST, requestEntity, String.class));
+      } else {
+        responseEntity = exchangeBalanced(loadBalancer, requestEntity, apiEndpoint);
+      }
       if (responseEntity.getStatusCode().is2xxSuccessful()) {
         log.debug("API request succeeded. Response: {}", responseEntity.getStatusCode());
         return responseEntity;
@@ -178,10 +212,39 @@ public class GpasPseudonymGenerator implements Generator {
         "API request due unexpected error unsuccessful gPas unsuccessful.");
   }
 
+  private ResponseEntity<String> exchangeBalanced(
+      GpasLoadBalancer balancer, HttpEntity<String> requestEntity, String apiEndpoint) {
+    // Only getting or creating a patient pseudonym is idempotent and can be hedged
+    var idempotent = CREATE_OR_GET_PSN.equals(apiEndpoint);
+    return retryTemplate.execute(
+        ctx ->
+            balancer.execute(
+                idempotent,
+                uri ->
+                    restTemplate.exchange(
+                        buildRequestUrl(uri, apiEndpoint),
+                        HttpMethod.POST,
+                        requestEntity,
+                        String.class)));
+  }
+
   protected URI buildRequestUrl(String apiEndpoint) throws URISyntaxException {
     if (null == gPasUrl) {
       throw new URISyntaxException("null", "URI must not be null");
     }
+    return buildRequestUri(gPasUrl, apiEndpoint);
+  }
+
+  protected URI buildRequestUrl(String gPasUrl, String apiEndpoint) {
+    try {
+      return buildRequestUri(gPasUrl, apiEndpoint);
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException("Invalid gPAS URI '%s'".formatted(gPasUrl), e);
+    }
+  }
+
+  private static URI buildRequestUri(String gPasUrl, String apiEndpoint)
+      throws URISyntaxException {
     var gPasUrl1 = gPasUrl;
     if (gPasUrl.lastIndexOf("/") == gPasUrl.length() - 1) {
       gPasUrl1 = gPasUrl.substring(0, gPasUrl.length() - 1);
@@ -23,10 +23,12 @@ package dev.dnpm.etl.processor.config
 import dev.dnpm.etl.processor.security.Role
 import org.springframework.boot.context.properties.ConfigurationProperties
 import org.springframework.boot.context.properties.DeprecatedConfigurationProperty
+import java.time.Duration
 
 @ConfigurationProperties(AppConfigProperties.NAME)
 data class AppConfigProperties(
     var transformations: List<TransformationProperties> = listOf(),
+    var mappingTables: List<MappingTableProperties> = listOf(),
     var maxRetryAttempts: Int = 3,
     var duplicationDetection: Boolean = true,
     var genomDeTestSubmission: Boolean = false,
@@ -41,12 +43,29 @@ data class AppConfigProperties(
 data class PseudonymizeConfigProperties(
     var generator: PseudonymGenerator = PseudonymGenerator.BUILDIN,
     val prefix: String = "UNKNOWN",
+    /** Minimal number of elements in large sections to pseudonymize an MTB in parallel, zero to disable */
+    val parallelThreshold: Int = 5000,
 ) {
     companion object {
         const val NAME = "app.pseudonymize"
     }
 }
 
+@ConfigurationProperties(PseudonymCacheConfigProperties.NAME)
+data class PseudonymCacheConfigProperties(
+    val enabled: Boolean = false,
+    /** Secret key used to hash patient IDs, must be changed if the pseudonym domain changes */
+    val hmacKey: String? = null,
+    /** Time to live of cached pseudonyms */
+    val ttl: Duration = Duration.ofDays(30),
+    /** Maximum number of entries kept in memory */
+    val nearCacheSize: Int = 1000,
+) {
+    companion object {
+        const val NAME = "app.pseudonymize.cache"
+    }
+}
+
 @ConfigurationProperties(GPasConfigProperties.NAME)
 data class GPasConfigProperties(
     val uri: String?,
@@ -56,12 +75,41 @@ data class GPasConfigProperties(
     val genomDeTanDomain: String = "ccdn",
     val username: String?,
     val password: String?,
+    val soap: GPasSoapProperties = GPasSoapProperties(),
+    /** Additional gPAS REST API URIs used for client side load balancing */
+    val additionalUris: List<String> = listOf(),
+    val hedging: GPasHedgingProperties = GPasHedgingProperties(),
 ) {
+    /** All configured gPAS REST API URIs */
+    fun uris(): List<String> = (listOfNotNull(uri) + additionalUris).filter { it.isNotBlank() }.distinct()
+
     companion object {
         const val NAME = "app.pseudonymize.gpas"
     }
 }
 
+data class GPasHedgingProperties(
+    /** Send hedged requests to another gPAS instance if there is no timely response */
+    val enabled: Boolean = false,
+    /** Percentile of recent response times to wait for a response before sending a hedged request */
+    val percentile: Double = 0.95,
+    /** Delay used until enough response times have been recorded */
+    val initialDelay: Duration = Duration.ofMillis(500),
+    /** Minimal delay before sending a hedged request */
+    val minDelay: Duration = Duration.ofMillis(50),
+)
+
+data class GPasSoapProperties(
+    /** Use pooled HTTP connections of the HttpClient 5 conduit on an own bus */
+    val pooled: Boolean = false,
+    val connectTimeout: Duration = Duration.ofSeconds(30),
+    val receiveTimeout: Duration = Duration.ofSeconds(60),
+    /** Maximum number of pooled connections, used in pooled mode only */
+    val maxConnections: Int = 16,
+    /** Time to live of pooled connections, used in pooled mode only */
+    val connectionTtl: Duration = Duration.ofMinutes(1),
+)
+
 @ConfigurationProperties(ConsentConfigProperties.NAME)
 data class ConsentConfigProperties(
     var service: ConsentService = ConsentService.NONE,
@@ -71,6 +119,61 @@ data class ConsentConfigProperties(
     }
 }
 
+@ConfigurationProperties(ConsentCacheConfigProperties.NAME)
+data class ConsentCacheConfigProperties(
+    val enabled: Boolean = false,
+    /** Time to live of cached consent lookups */
+    val ttl: Duration = Duration.ofHours(1),
+    /** Maximum number of cached consent lookups */
+    val maxSize: Int = 10000,
+    /** Maximum age of last known consent lookups used if gICS is not available, zero to disable */
+    val maxStaleness: Duration = Duration.ZERO,
+) {
+    companion object {
+        const val NAME = "app.consent.cache"
+    }
+}
+
+@ConfigurationProperties(ConsentRecheckConfigProperties.NAME)
+data class ConsentRecheckConfigProperties(
+    val enabled: Boolean = false,
+    /** Maximum number of concurrent consent lookups */
+    val maxConcurrency: Int = 2,
+    /** Delay between two consent lookups to not disturb regular processing */
+    val delay: Duration = Duration.ofMillis(500),
+    /** Kafka topic for re-export requests, if not set re-export requests are listed on configs page */
+    val topic: String? = null,
+    /** Secret key used to encrypt and hash stored patient IDs */
+    val secret: String? = null,
+) {
+    companion object {
+        const val NAME = "app.consent.recheck"
+    }
+}
+
+@ConfigurationProperties(ConsentNotificationConfigProperties.NAME)
+data class ConsentNotificationConfigProperties(
+    val enabled: Boolean = false,
+    /** Re-evaluate consent of affected patients registered for consent re-evaluation */
+    val reexport: Boolean = true,
+) {
+    companion object {
+        const val NAME = "app.consent.notification"
+    }
+}
+
+@ConfigurationProperties(TransformationRulesConfigProperties.NAME)
+data class TransformationRulesConfigProperties(
+    /** JSON file with transformations and mapping tables, replaces configured rules and is reloaded on change */
+    val file: String? = null,
+    /** Interval to check the JSON file and referenced CSV files for changes */
+    val checkInterval: Duration = Duration.ofSeconds(10),
+) {
+    companion object {
+        const val NAME = "app.transformation-rules"
+    }
+}
+
 @ConfigurationProperties(GIcsConfigProperties.NAME)
 data class GIcsConfigProperties(
     /** Base URL to gICS System */
@@ -100,6 +203,8 @@ data class GIcsConfigProperties(
         "https://ths-greifswald.de/fhir/CodeSystem/gics/Policy/GenomDE_MV",
     /** Consent version (fixed version) */
     val genomeDeConsentVersion: String = "2.0",
+    /** Format of request bodies sent to gICS */
+    val requestFormat: GIcsRequestFormat = GIcsRequestFormat.XML,
 ) {
     companion object {
         const val NAME = "app.consent.gics"
@@ -144,6 +249,22 @@ data class SecurityConfigProperties(
     }
 }
 
+@ConfigurationProperties(CircuitBreakerConfigProperties.NAME)
+data class CircuitBreakerConfigProperties(
+    /** Disabled by default to keep retry behaviour of previous versions */
+    val enabled: Boolean = false,
+    /** Number of consecutive failed attempts to open the circuit */
+    val failureThreshold: Int = 5,
+    /** Duration to fail fast before a trial call is permitted */
+    val openDuration: Duration = Duration.ofSeconds(30),
+    /** Maximum number of concurrent calls per remote system, bulkhead is disabled if zero */
+    val maxConcurrentCalls: Int = 0,
+) {
+    companion object {
+        const val NAME = "app.circuit-breaker"
+    }
+}
+
 data class UserProperties(
     val username: String,
     val password: String,
@@ -160,8 +281,29 @@ enum class ConsentService {
     GICS_GET_BC,
 }
 
+enum class GIcsRequestFormat {
+    XML,
+    JSON,
+}
+
 data class TransformationProperties(
     val path: String,
     val from: String,
     val to: String,
 )
+
+data class MappingTableProperties(
+    /** Path to the value in MTB file */
+    val path: String,
+    /** Inline mappings of existing values to new values */
+    val entries: List<MappingTableEntryProperties> = listOf(),
+    /** CSV file with existing and new value per line */
+    val file: String? = null,
+    /** Separator of values in CSV file */
+    val separator: Char = ',',
+)
+
+data class MappingTableEntryProperties(
+    val from: String,
+    val to: String,
+)
@@ -21,37 +21,63 @@
 package dev.dnpm.etl.processor.config
 
 import com.fasterxml.jackson.databind.ObjectMapper
+import dev.dnpm.etl.processor.consent.CachingConsentService
+import dev.dnpm.etl.processor.consent.ConsentCache
 import dev.dnpm.etl.processor.consent.GicsConsentService
 import dev.dnpm.etl.processor.consent.GicsGetBroadConsentService
 import dev.dnpm.etl.processor.consent.IConsentService
 import dev.dnpm.etl.processor.consent.MtbFileConsentService
 import dev.dnpm.etl.processor.monitoring.*
 import dev.dnpm.etl.processor.pseudonym.*
+import dev.dnpm.etl.processor.resilience.CircuitBreaker
+import dev.dnpm.etl.processor.resilience.CircuitBreakerRegistry
+import dev.dnpm.etl.processor.resilience.CircuitBreakerRetryTemplate
 import dev.dnpm.etl.processor.security.TokenRepository
 import dev.dnpm.etl.processor.security.TokenService
+import dev.dnpm.etl.processor.services.ConcurrentLookups
+import dev.dnpm.etl.processor.services.ConsentNotificationProcessor
 import dev.dnpm.etl.processor.services.ConsentProcessor
+import dev.dnpm.etl.processor.services.ConsentRecheckRepository
+import dev.dnpm.etl.processor.services.ConsentRecheckService
+import dev.dnpm.etl.processor.services.MappingTable
 import dev.dnpm.etl.processor.services.Transformation
+import dev.dnpm.etl.processor.services.TransformationRulesLoader
 import dev.dnpm.etl.processor.services.TransformationService
+import io.micrometer.core.instrument.MeterRegistry
+import org.apache.cxf.Bus
+import org.apache.cxf.bus.CXFBusFactory
+import org.apache.cxf.frontend.ClientProxy
 import org.apache.cxf.jaxws.JaxWsProxyFactoryBean
+import org.apache.cxf.transport.http.HTTPConduit
+import org.apache.cxf.transport.http.asyncclient.hc5.AsyncHTTPConduitFactory
+import org.apache.cxf.transports.http.configuration.ConnectionType
+import org.apache.cxf.transports.http.configuration.HTTPClientPolicy
 import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.ObjectProvider
 import org.springframework.boot.autoconfigure.condition.AnyNestedCondition
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.boot.restclient.RestTemplateBuilder
+import org.springframework.classify.BinaryExceptionClassifier
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Conditional
 import org.springframework.context.annotation.Configuration
 import org.springframework.context.annotation.ConfigurationCondition
 import org.springframework.data.jdbc.repository.config.AbstractJdbcConfiguration
+import org.springframework.http.converter.ByteArrayHttpMessageConverter
 import org.springframework.http.converter.StringHttpMessageConverter
 import org.springframework.http.converter.json.JacksonJsonHttpMessageConverter
+import org.springframework.kafka.core.KafkaTemplate
 import org.springframework.retry.RetryCallback
 import org.springframework.retry.RetryContext
 import org.springframework.retry.RetryListener
+import org.springframework.retry.RetryPolicy
+import org.springframework.retry.backoff.ExponentialBackOffPolicy
+import org.springframework.retry.policy.BinaryExceptionClassifierRetryPolicy
+import org.springframework.retry.policy.CompositeRetryPolicy
 import org.springframework.retry.policy.SimpleRetryPolicy
 import org.springframework.retry.support.RetryTemplate
-import org.springframework.retry.support.RetryTemplateBuilder
 import org.springframework.scheduling.annotation.EnableScheduling
 import org.springframework.security.crypto.password.PasswordEncoder
 import org.springframework.security.provisioning.InMemoryUserDetailsManager
@@ -59,8 +85,8 @@ import org.springframework.web.client.HttpClientErrorException
 import org.springframework.web.client.RestTemplate
 import reactor.core.publisher.Sinks
 import tools.jackson.databind.json.JsonMapper
+import java.util.concurrent.Executors
 import kotlin.time.Duration.Companion.seconds
-import kotlin.time.toJavaDuration
 
 @Configuration
 @EnableConfigurationProperties(
@@ -68,16 +94,20 @@ import kotlin.time.toJavaDuration
         [
             AppConfigProperties::class,
             PseudonymizeConfigProperties::class,
+            PseudonymCacheConfigProperties::class,
             GPasConfigProperties::class,
             ConsentConfigProperties::class,
+            ConsentCacheConfigProperties::class,
+            ConsentRecheckConfigProperties::class,
+            ConsentNotificationConfigProperties::class,
+            TransformationRulesConfigProperties::class,
             GIcsConfigProperties::class,
+            CircuitBreakerConfigProperties::class,
         ]
 )
 @EnableScheduling
 class AppConfiguration {
 
-    private val logger = LoggerFactory.getLogger(AppConfiguration::class.java)
-
     fun stringHttpMessageConverter(): StringHttpMessageConverter {
         return StringHttpMessageConverter()
     }
@@ -91,6 +121,7 @@ class AppConfiguration {
     fun restTemplate(jsonMapper: JsonMapper): RestTemplate {
         return RestTemplateBuilder()
             .messageConverters(
+                ByteArrayHttpMessageConverter(),
                 stringHttpMessageConverter(),
                 jacksonJsonHttpMapperConverter(jsonMapper),
             )
@@ -102,21 +133,58 @@ class AppConfiguration {
         return AppFhirConfig()
     }
 
+    @ConditionalOnProperty(value = ["app.pseudonymize.generator"], havingValue = "GPAS")
+    @ConditionalOnProperty(value = ["app.pseudonymize.gpas.soap-endpoint"])
+    @ConditionalOnProperty(value = ["app.pseudonymize.gpas.soap.pooled"], havingValue = "true")
+    @Bean(destroyMethod = "shutdown")
+    fun gpasSoapBus(gpasConfigProperties: GPasConfigProperties): Bus {
+        // Use own bus to not share the connection pool settings with other clients
+        return CXFBusFactory().createBus(
+            mapOf(),
+            mapOf(
+                AsyncHTTPConduitFactory.USE_POLICY to "ASYNC_ONLY",
+                AsyncHTTPConduitFactory.MAX_CONNECTIONS to gpasConfigProperties.soap.maxConnections,
+                AsyncHTTPConduitFactory.MAX_PER_HOST_CONNECTIONS to gpasConfigProperties.soap.maxConnections,
+                AsyncHTTPConduitFactory.CONNECTION_TTL to gpasConfigProperties.soap.connectionTtl.toMillis(),
+            ),
+        )
+    }
+
     @ConditionalOnProperty(value = ["app.pseudonymize.generator"], havingValue = "GPAS")
     @ConditionalOnProperty(value = ["app.pseudonymize.gpas.soap-endpoint"])
     @Bean
-    fun gpasSoapProxyFactoryBean(gpasConfigProperties: GPasConfigProperties): JaxWsProxyFactoryBean {
+    fun gpasSoapProxyFactoryBean(
+        gpasConfigProperties: GPasConfigProperties,
+        gpasSoapBus: Bus?,
+    ): JaxWsProxyFactoryBean {
         val proxyFactory = JaxWsProxyFactoryBean()
         proxyFactory.serviceClass = GpasSoapService::class.java
         proxyFactory.address = gpasConfigProperties.soapEndpoint
+        if (null != gpasSoapBus) {
+            proxyFactory.bus = gpasSoapBus
+        }
         return proxyFactory
     }
 
     @ConditionalOnProperty(value = ["app.pseudonymize.generator"], havingValue = "GPAS")
     @ConditionalOnProperty(value = ["app.pseudonymize.gpas.soap-endpoint"])
     @Bean
-    fun gpasSoapProxy(gpasConfigProperties: GPasConfigProperties): GpasSoapService {
-        return gpasSoapProxyFactoryBean(gpasConfigProperties).create() as GpasSoapService
+    fun gpasSoapProxy(
+        gpasConfigProperties: GPasConfigProperties,
+        gpasSoapProxyFactoryBean: JaxWsProxyFactoryBean,
+    ): GpasSoapService {
+        val proxy = gpasSoapProxyFactoryBean.create() as GpasSoapService
+        val conduit = ClientProxy.getClient(proxy).conduit as HTTPConduit
+        conduit.client =
+            HTTPClientPolicy().apply {
+                connectionTimeout = gpasConfigProperties.soap.connectTimeout.toMillis()
+                receiveTimeout = gpasConfigProperties.soap.receiveTimeout.toMillis()
+                connection = ConnectionType.KEEP_ALIVE
+            }
+        if (gpasConfigProperties.soap.pooled) {
+            logger.info("Using pooled gPAS SOAP client with up to {} connections", gpasConfigProperties.soap.maxConnections)
+        }
+        return proxy
     }
 
     @ConditionalOnProperty(value = ["app.pseudonymize.generator"], havingValue = "GPAS")
@@ -124,16 +192,19 @@ class AppConfiguration {
     @Bean
     fun gpasSoapPseudonymGenerator(
         configProperties: GPasConfigProperties,
-        retryTemplate: RetryTemplate,
+        appConfigProperties: AppConfigProperties,
+        circuitBreakerRegistry: CircuitBreakerRegistry,
         gpasSoapService: GpasSoapService,
         appFhirConfig: AppFhirConfig,
+        meterRegistry: MeterRegistry,
     ): Generator {
         logger.info("Selected 'GpasSoapPseudonym Generator'")
         return GpasSoapPseudonymGenerator(
             configProperties,
-            retryTemplate,
+            createRetryTemplate(appConfigProperties, circuitBreakerRegistry.circuitBreakerIfEnabled(GPAS)),
             gpasSoapService,
             appFhirConfig,
+            meterRegistry,
         )
     }
 
@@ -142,12 +213,27 @@ class AppConfiguration {
     @Bean
     fun gpasPseudonymGenerator(
         configProperties: GPasConfigProperties,
-        retryTemplate: RetryTemplate,
+        appConfigProperties: AppConfigProperties,
+        circuitBreakerRegistry: CircuitBreakerRegistry,
         restTemplate: RestTemplate,
         appFhirConfig: AppFhirConfig,
     ): Generator {
         logger.info("Selected 'GpasPseudonym Generator'")
-        return GpasPseudonymGenerator(configProperties, retryTemplate, restTemplate, appFhirConfig)
+        val uris = configProperties.uris()
+        val loadBalancer =
+            if (uris.size > 1) {
+                logger.info("Using {} gPAS instances, hedged requests enabled: {}", uris.size, configProperties.hedging.enabled)
+                GpasLoadBalancer(uris, configProperties.hedging)
+            } else {
+                null
+            }
+        return GpasPseudonymGenerator(
+            configProperties,
+            createRetryTemplate(appConfigProperties, circuitBreakerRegistry.circuitBreakerIfEnabled(GPAS)),
+            restTemplate,
+            appFhirConfig,
+            loadBalancer,
+        )
     }
 
     @ConditionalOnProperty(
@@ -161,12 +247,23 @@ class AppConfiguration {
         return AnonymizingGenerator()
     }
 
+    @ConditionalOnProperty(value = ["app.pseudonymize.cache.enabled"], havingValue = "true")
+    @Bean
+    fun pseudonymCache(
+        pseudonymCacheRepository: PseudonymCacheRepository,
+        pseudonymCacheConfigProperties: PseudonymCacheConfigProperties,
+    ): PseudonymCache {
+        logger.info("Using shared pseudonym cache with TTL of {}", pseudonymCacheConfigProperties.ttl)
+        return PseudonymCache(pseudonymCacheRepository, pseudonymCacheConfigProperties)
+    }
+
     @Bean
     fun pseudonymizeService(
         generator: Generator,
         pseudonymizeConfigProperties: PseudonymizeConfigProperties,
+        pseudonymCache: PseudonymCache?,
     ): PseudonymizeService {
-        return PseudonymizeService(generator, pseudonymizeConfigProperties)
+        return PseudonymizeService(generator, pseudonymizeConfigProperties, pseudonymCache)
     }
 
     @Bean
@@ -177,32 +274,38 @@ class AppConfiguration {
     @Bean
     fun transformationService(jsonMapper: JsonMapper, configProperties: AppConfigProperties): TransformationService {
         logger.info("Apply ${configProperties.transformations.size} transformation rules")
+        val mappingTables =
+            configProperties.mappingTables.map { properties ->
+                MappingTable.of(properties).also {
+                    logger.info("Apply mapping table with ${it.size} entries for '${it.path}'")
+                }
+            }
         return TransformationService(
             jsonMapper,
             configProperties.transformations.map { Transformation.of(it.path) from it.from to it.to },
+            mappingTables,
         )
     }
 
+    @ConditionalOnProperty(value = ["app.transformation-rules.file"])
+    @Bean
+    fun transformationRulesLoader(
+        transformationService: TransformationService,
+        configProperties: TransformationRulesConfigProperties,
+        jsonMapper: JsonMapper,
+    ): TransformationRulesLoader {
+        logger.info("Using transformation rules from file '{}'", configProperties.file)
+        return TransformationRulesLoader(transformationService, configProperties, jsonMapper).also { it.reload() }
+    }
+
     @Bean
     fun retryTemplate(configProperties: AppConfigProperties): RetryTemplate {
-        return RetryTemplateBuilder()
-            .notRetryOn(IllegalArgumentException::class.java)
-            .notRetryOn(HttpClientErrorException.BadRequest::class.java)
-            .notRetryOn(HttpClientErrorException.UnprocessableContent::class.java)
-            .exponentialBackoff(2.seconds.toJavaDuration(), 1.25, 5.seconds.toJavaDuration())
-            .customPolicy(SimpleRetryPolicy(configProperties.maxRetryAttempts))
-            .withListener(
-                object : RetryListener {
-                    override fun <T : Any, E : Throwable> onError(
-                        context: RetryContext,
-                        callback: RetryCallback<T, E>,
-                        throwable: Throwable,
-                    ) {
-                        logger.warn("Error occured: {}. Retrying {}", throwable.message, context.retryCount)
-                    }
-                }
-            )
-            .build()
+        return createRetryTemplate(configProperties)
+    }
+
+    @Bean
+    fun circuitBreakerRegistry(circuitBreakerConfigProperties: CircuitBreakerConfigProperties): CircuitBreakerRegistry {
+        return CircuitBreakerRegistry(circuitBreakerConfigProperties)
     }
 
     @ConditionalOnProperty(value = ["app.security.enable-tokens"], havingValue = "true")
@@ -215,6 +318,12 @@ class AppConfiguration {
         return TokenService(userDetailsManager, passwordEncoder, tokenRepository)
     }
 
+    @Bean
+    fun concurrentLookups(): ConcurrentLookups {
+        // Unbounded, since lookup scopes may be nested
+        return ConcurrentLookups(Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("lookup-", 0).factory()))
+    }
+
     @Bean
     fun statisticsUpdateProducer(): Sinks.Many<Any> {
         return Sinks.many().multicast().directBestEffort()
@@ -259,30 +368,59 @@ class AppConfiguration {
         return AppJdbcConfiguration()
     }
 
+    @ConditionalOnProperty(value = ["app.consent.cache.enabled"], havingValue = "true")
+    @Bean
+    fun consentCache(consentCacheConfigProperties: ConsentCacheConfigProperties): ConsentCache {
+        logger.info("Using consent cache with TTL of {}", consentCacheConfigProperties.ttl)
+        if (consentCacheConfigProperties.maxStaleness.isPositive) {
+            logger.info("Using last known consent up to {} if gICS is not available", consentCacheConfigProperties.maxStaleness)
+        }
+        return ConsentCache(
+            consentCacheConfigProperties.ttl,
+            consentCacheConfigProperties.maxSize,
+            consentCacheConfigProperties.maxStaleness,
+        )
+    }
+
     @Conditional(GicsEnabledCondition::class)
     @Bean
     fun gicsConsentService(
         gIcsConfigProperties: GIcsConfigProperties,
-        retryTemplate: RetryTemplate,
+        appConfigProperties: AppConfigProperties,
+        circuitBreakerRegistry: CircuitBreakerRegistry,
         restTemplate: RestTemplate,
         appFhirConfig: AppFhirConfig,
+        consentCache: ConsentCache?,
     ): IConsentService {
-        return GicsConsentService(gIcsConfigProperties, retryTemplate, restTemplate, appFhirConfig)
+        return cached(
+            GicsConsentService(
+                gIcsConfigProperties,
+                createRetryTemplate(appConfigProperties, circuitBreakerRegistry.circuitBreakerIfEnabled(GICS)),
+                restTemplate,
+                appFhirConfig,
+            ),
+            consentCache,
+        )
     }
 
     @Conditional(GicsGetBroadConsentEnabledCondition::class)
     @Bean
     fun gicsGetBroadConsentService(
         gIcsConfigProperties: GIcsConfigProperties,
-        retryTemplate: RetryTemplate,
+        appConfigProperties: AppConfigProperties,
+        circuitBreakerRegistry: CircuitBreakerRegistry,
         restTemplate: RestTemplate,
         appFhirConfig: AppFhirConfig,
+        consentCache: ConsentCache?,
     ): IConsentService {
-        return GicsGetBroadConsentService(
-            gIcsConfigProperties,
-            retryTemplate,
-            restTemplate,
-            appFhirConfig,
+        return cached(
+            GicsGetBroadConsentService(
+                gIcsConfigProperties,
+                createRetryTemplate(appConfigProperties, circuitBreakerRegistry.circuitBreakerIfEnabled(GICS)),
+                restTemplate,
+                appFhirConfig,
+            ),
+            consentCache,
         )
     }
 
@@ -294,6 +432,7 @@ class AppConfiguration {
         getObjectMapper: JsonMapper,
         appFhirConfig: AppFhirConfig,
         gicsConsentService: IConsentService,
+        concurrentLookups: ConcurrentLookups,
     ): ConsentProcessor {
         return ConsentProcessor(
             configProperties,
@@ -301,6 +440,7 @@ class AppConfiguration {
             getObjectMapper,
             appFhirConfig.fhirContext(),
             gicsConsentService,
+            concurrentLookups,
         )
     }
 
@@ -318,11 +458,119 @@ class AppConfiguration {
         )
     }
 
+    @ConditionalOnProperty(value = ["app.consent.recheck.enabled"], havingValue = "true")
+    @Bean
+    fun consentRecheckService(
+        consentRecheckRepository: ConsentRecheckRepository,
+        requestRepository: RequestRepository,
+        consentProcessor: ConsentProcessor,
+        consentRecheckConfigProperties: ConsentRecheckConfigProperties,
+        jsonMapper: JsonMapper,
+        kafkaTemplate: ObjectProvider<KafkaTemplate<String, ByteArray>>,
+    ): ConsentRecheckService {
+        val topic = consentRecheckConfigProperties.topic
+        if (topic.isNullOrBlank()) {
+            logger.info("Using consent re-evaluation - re-export requests are listed on configs page")
+        } else {
+            logger.info("Using consent re-evaluation - re-export requests are sent to topic '{}'", topic)
+        }
+        return ConsentRecheckService(
+            consentRecheckRepository,
+            requestRepository,
+            consentProcessor,
+            consentRecheckConfigProperties,
+            jsonMapper,
+            if (topic.isNullOrBlank()) null else kafkaTemplate.ifAvailable,
+        )
+    }
+
+    @ConditionalOnProperty(value = ["app.consent.notification.enabled"], havingValue = "true")
+    @Bean
+    fun consentNotificationProcessor(
+        gIcsConfigProperties: GIcsConfigProperties,
+        consentNotificationConfigProperties: ConsentNotificationConfigProperties,
+        consentCache: ConsentCache?,
+        pseudonymCache: PseudonymCache?,
+        consentRecheckService: ConsentRecheckService?,
+    ): ConsentNotificationProcessor {
+        logger.info("Accepting consent change notifications")
+        return ConsentNotificationProcessor(
+            gIcsConfigProperties.personIdentifierSystem,
+            consentNotificationConfigProperties,
+            consentCache,
+            pseudonymCache,
+            consentRecheckService,
+        )
+    }
+
     @Bean
     @ConditionalOnMissingBean
     fun iGetConsentService(): IConsentService {
         return MtbFileConsentService()
     }
+
+    private fun cached(
+        consentService: IConsentService,
+        consentCache: ConsentCache?,
+    ): IConsentService = if (null == consentCache) consentService else CachingConsentService(consentService, consentCache)
+
+    companion object {
+        const val GPAS = "gPAS"
+        const val GICS = "gICS"
+        const val DNPM_DIP = "DNPM:DIP"
+
+        private val logger = LoggerFactory.getLogger(AppConfiguration::class.java)
+
+        /**
+         * Creates a retry template for calls to a remote system. If a circuit breaker is given,
+         * each attempt fails fast while the circuit is open and no further retries are made once it opens.
+         */
+        fun createRetryTemplate(
+            configProperties: AppConfigProperties,
+            circuitBreaker: CircuitBreaker? = null,
+        ): RetryTemplate {
+            val retryPolicy = SimpleRetryPolicy(configProperties.maxRetryAttempts)
+            val retryTemplate = circuitBreaker?.let { CircuitBreakerRetryTemplate(it) } ?: RetryTemplate()
+            retryTemplate.setRetryPolicy(
+                CompositeRetryPolicy().apply {
+                    setPolicies(
+                        arrayOf<RetryPolicy>(
+                            circuitBreaker?.retryPolicy(retryPolicy) ?: retryPolicy,
+                            BinaryExceptionClassifierRetryPolicy(
+                                BinaryExceptionClassifier(
+                                    listOf(
+                                        IllegalArgumentException::class.java,
+                                        HttpClientErrorException.BadRequest::class.java,
+                                        HttpClientErrorException.UnprocessableContent::class.java,
+                                    ),
+                                    false,
+                                )
+                            ),
+                        )
+                    )
+                }
+            )
+            retryTemplate.setBackOffPolicy(
+                ExponentialBackOffPolicy().apply {
+                    initialInterval = 2.seconds.inWholeMilliseconds
+                    multiplier = 1.25
+                    maxInterval = 5.seconds.inWholeMilliseconds
+                }
+            )
+            retryTemplate.registerListener(
+                object : RetryListener {
+                    override fun <T : Any, E : Throwable> onError(
+                        context: RetryContext,
+                        callback: RetryCallback<T, E>,
+                        throwable: Throwable,
+                    ) {
+                        logger.warn("Error occured: {}. Retrying {}", throwable.message, context.retryCount)
+                    }
+                }
+            )
+            return retryTemplate
+        }
+    }
 }
 
 class GicsEnabledCondition :
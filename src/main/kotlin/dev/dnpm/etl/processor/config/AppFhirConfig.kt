@@ -26,7 +26,5 @@ import org.springframework.context.annotation.Configuration
 
 @Configuration
 class AppFhirConfig {
-    private val fhirCtx: FhirContext = FhirContext.forR4()
-
-    @Bean fun fhirContext(): FhirContext = fhirCtx
+    @Bean fun fhirContext(): FhirContext = SharedFhirContext.fhirContext()
 }
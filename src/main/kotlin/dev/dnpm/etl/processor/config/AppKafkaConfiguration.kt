@@ -55,7 +55,7 @@ class AppKafkaConfiguration {
 
     @Bean
     fun kafkaMtbFileSender(
-        kafkaTemplate: KafkaTemplate<String, String>,
+        kafkaTemplate: KafkaTemplate<String, ByteArray>,
         kafkaProperties: KafkaProperties,
         retryTemplate: RetryTemplate,
         jsonMapper: JsonMapper,
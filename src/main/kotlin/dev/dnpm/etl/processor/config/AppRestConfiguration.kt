@@ -26,6 +26,7 @@ import dev.dnpm.etl.processor.monitoring.ReportService
 import dev.dnpm.etl.processor.monitoring.RestConnectionCheckService
 import dev.dnpm.etl.processor.output.MtbFileSender
 import dev.dnpm.etl.processor.output.RestDipMtbFileSender
+import dev.dnpm.etl.processor.resilience.CircuitBreakerRegistry
 import org.slf4j.LoggerFactory
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
@@ -33,7 +34,6 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean
 import org.springframework.context.annotation.Configuration
 import org.springframework.core.annotation.Order
-import org.springframework.retry.support.RetryTemplate
 import org.springframework.web.client.RestTemplate
 import reactor.core.publisher.Sinks
 
@@ -49,10 +49,16 @@ class AppRestConfiguration {
     fun restMtbFileSender(
         restTemplate: RestTemplate,
         restTargetProperties: RestTargetProperties,
-        retryTemplate: RetryTemplate,
+        appConfigProperties: AppConfigProperties,
+        circuitBreakerRegistry: CircuitBreakerRegistry,
         reportService: ReportService,
     ): MtbFileSender {
         logger.info("Selected 'RestDipMtbFileSender'")
+        val retryTemplate =
+            AppConfiguration.createRetryTemplate(
+                appConfigProperties,
+                circuitBreakerRegistry.circuitBreakerIfEnabled(AppConfiguration.DNPM_DIP),
+            )
         return RestDipMtbFileSender(restTemplate, restTargetProperties, retryTemplate, reportService)
     }
 
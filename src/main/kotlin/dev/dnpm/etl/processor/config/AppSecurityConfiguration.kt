@@ -58,10 +58,12 @@ class AppSecurityConfiguration(private val securityConfigProperties: SecurityCon
         http {
             authorizeHttpRequests {
                 authorize("/configs/**", hasRole("ADMIN"))
+                authorize("/actuator/metrics/**", hasRole("ADMIN"))
                 authorize("/api/mtbfile/**", hasAnyRole("MTBFILE", "ADMIN", "USER"))
                 authorize("/api/mtb/**", hasAnyRole("MTBFILE", "ADMIN", "USER"))
                 authorize("/mtbfile/**", hasAnyRole("MTBFILE", "ADMIN", "USER"))
                 authorize("/mtb/**", hasAnyRole("MTBFILE", "ADMIN", "USER"))
+                authorize("/api/consent/**", hasAnyRole("MTBFILE", "ADMIN"))
                 authorize("/patient/**", hasAnyRole("ADMIN", "USER"))
                 authorize("/report/**", hasAnyRole("ADMIN", "USER"))
                 authorize("/submission/**", hasAnyRole("ADMIN", "USER"))
@@ -0,0 +1,156 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2023-2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.config
+
+import ca.uhn.fhir.context.FhirContext
+import ca.uhn.fhir.parser.IJsonLikeParser
+import ca.uhn.fhir.parser.json.BaseJsonLikeWriter
+import org.hl7.fhir.instance.model.api.IBaseResource
+import tools.jackson.databind.JsonNode
+import tools.jackson.databind.node.ArrayNode
+import tools.jackson.databind.node.JsonNodeFactory
+import tools.jackson.databind.node.ObjectNode
+import java.math.BigDecimal
+import java.math.BigInteger
+
+/**
+ * Writes a FHIR resource encoded by HAPI FHIR's JSON parser directly into a Jackson tree.
+ *
+ * This avoids encoding a resource to a JSON string and parsing it again before it can be used
+ * with Jackson, e.g. to convert a consent resource into a DTO or to serialize it.
+ *
+ * @since 0.17.0
+ */
+class FhirJsonTreeWriter private constructor() : BaseJsonLikeWriter() {
+    private val stack = ArrayDeque<JsonNode>()
+    private var root: ObjectNode? = null
+
+    override fun init(): BaseJsonLikeWriter = this
+
+    override fun flush(): BaseJsonLikeWriter = this
+
+    override fun close() {
+        // Nothing to close
+    }
+
+    override fun beginObject(): BaseJsonLikeWriter {
+        val node =
+            when (val current = stack.lastOrNull()) {
+                null -> JsonNodeFactory.instance.objectNode().also { root = it }
+                is ArrayNode -> current.addObject()
+                else -> throw IllegalStateException("Cannot begin unnamed object within object")
+            }
+        stack.addLast(node)
+        return this
+    }
+
+    override fun beginObject(name: String): BaseJsonLikeWriter {
+        stack.addLast(currentObject().putObject(name))
+        return this
+    }
+
+    override fun beginArray(name: String): BaseJsonLikeWriter {
+        stack.addLast(currentObject().putArray(name))
+        return this
+    }
+
+    override fun write(value: String?): BaseJsonLikeWriter = apply { currentArray().add(value) }
+
+    override fun write(value: BigInteger?): BaseJsonLikeWriter = apply { currentArray().add(value) }
+
+    override fun write(value: BigDecimal?): BaseJsonLikeWriter = apply { currentArray().add(value) }
+
+    override fun write(value: Long): BaseJsonLikeWriter = apply { currentArray().add(value) }
+
+    override fun write(value: Double): BaseJsonLikeWriter = apply { currentArray().add(value) }
+
+    override fun write(value: Boolean?): BaseJsonLikeWriter = apply { currentArray().add(value) }
+
+    override fun write(value: Boolean): BaseJsonLikeWriter = apply { currentArray().add(value) }
+
+    override fun writeNull(): BaseJsonLikeWriter = apply { currentArray().addNull() }
+
+    override fun write(
+        name: String,
+        value: String?,
+    ): BaseJsonLikeWriter = apply { currentObject().put(name, value) }
+
+    override fun write(
+        name: String,
+        value: BigInteger?,
+    ): BaseJsonLikeWriter = apply { currentObject().put(name, value) }
+
+    override fun write(
+        name: String,
+        value: BigDecimal?,
+    ): BaseJsonLikeWriter = apply { currentObject().put(name, value) }
+
+    override fun write(
+        name: String,
+        value: Long,
+    ): BaseJsonLikeWriter = apply { currentObject().put(name, value) }
+
+    override fun write(
+        name: String,
+        value: Double,
+    ): BaseJsonLikeWriter = apply { currentObject().put(name, value) }
+
+    override fun write(
+        name: String,
+        value: Boolean?,
+    ): BaseJsonLikeWriter = apply { currentObject().put(name, value) }
+
+    override fun write(
+        name: String,
+        value: Boolean,
+    ): BaseJsonLikeWriter = apply { currentObject().put(name, value) }
+
+    override fun endObject(): BaseJsonLikeWriter = endBlock()
+
+    override fun endArray(): BaseJsonLikeWriter = endBlock()
+
+    override fun endBlock(): BaseJsonLikeWriter {
+        stack.removeLast()
+        return this
+    }
+
+    private fun currentObject(): ObjectNode =
+        stack.lastOrNull() as? ObjectNode ?: throw IllegalStateException("Cannot write named value outside of object")
+
+    private fun currentArray(): ArrayNode =
+        stack.lastOrNull() as? ArrayNode ?: throw IllegalStateException("Cannot write unnamed value outside of array")
+
+    companion object {
+        /**
+         * Encodes the given resource into a Jackson [ObjectNode] as HAPI FHIR's JSON parser would
+         * encode it into a JSON string.
+         */
+        @JvmStatic
+        fun toJsonTree(
+            fhirContext: FhirContext,
+            resource: IBaseResource,
+        ): ObjectNode {
+            val writer = FhirJsonTreeWriter()
+            (fhirContext.newJsonParser() as IJsonLikeParser).encodeResourceToJsonLikeWriter(resource, writer)
+            return writer.root ?: throw IllegalStateException("No resource written")
+        }
+    }
+}
@@ -38,9 +38,7 @@ import org.springframework.context.annotation.Configuration
 @Configuration
 class Jackson2Config {
     companion object {
-        var fhirContext: FhirContext = FhirContext.forR4()
-
-        @JvmStatic fun fhirContext(): FhirContext = fhirContext
+        @JvmStatic fun fhirContext(): FhirContext = SharedFhirContext.fhirContext()
     }
 
     @Bean
@@ -34,9 +34,7 @@ import tools.jackson.module.kotlin.KotlinModule
 class JacksonConfig {
 
     companion object {
-        var fhirContext: FhirContext = FhirContext.forR4()
-
-        @JvmStatic fun fhirContext(): FhirContext = fhirContext
+        @JvmStatic fun fhirContext(): FhirContext = SharedFhirContext.fhirContext()
     }
 
     @Bean
@@ -64,8 +62,11 @@ class JacksonConsentResourceSerializer : ValueSerializer<Consent>() {
         gen: tools.jackson.core.JsonGenerator?,
         ctxt: SerializationContext?,
     ) {
-        val json = JacksonConfig.fhirContext().newJsonParser().encodeResourceToString(value)
-        gen?.writeRawValue(json)
+        if (null == value) {
+            gen?.writeNull()
+            return
+        }
+        gen?.writeTree(FhirJsonTreeWriter.toJsonTree(JacksonConfig.fhirContext(), value))
     }
 }
 
@@ -0,0 +1,44 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.config
+
+import ca.uhn.fhir.context.FhirContext
+import ca.uhn.fhir.context.PerformanceOptionsEnum
+
+/**
+ * Shared FHIR context.
+ *
+ * Creating a FHIR context scans the FHIR model and is expensive, so all components use the same
+ * lazily created context. Parsers are not thread safe and are created from this context per use.
+ *
+ * @since 0.17.0
+ */
+object SharedFhirContext {
+    private val context: FhirContext by lazy {
+        FhirContext.forR4().apply {
+            // Model is scanned on first use of a resource type only
+            setPerformanceOptions(PerformanceOptionsEnum.DEFERRED_MODEL_SCANNING)
+        }
+    }
+
+    @JvmStatic
+    fun fhirContext(): FhirContext = context
+}
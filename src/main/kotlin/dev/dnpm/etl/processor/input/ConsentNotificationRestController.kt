@@ -0,0 +1,57 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.input
+
+import dev.dnpm.etl.processor.services.ConsentNotificationProcessor
+import dev.dnpm.etl.processor.services.GicsConsentNotification
+import org.slf4j.LoggerFactory
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.http.MediaType
+import org.springframework.http.ResponseEntity
+import org.springframework.web.bind.annotation.PostMapping
+import org.springframework.web.bind.annotation.RequestBody
+import org.springframework.web.bind.annotation.RequestMapping
+import org.springframework.web.bind.annotation.RestController
+
+/**
+ * Endpoint for consent change notifications sent by gICS
+ *
+ * @since 0.17.0
+ */
+@RestController
+@RequestMapping(path = ["api/consent/notification"])
+@ConditionalOnProperty(value = ["app.consent.notification.enabled"], havingValue = "true")
+class ConsentNotificationRestController(
+    private val consentNotificationProcessor: ConsentNotificationProcessor,
+) {
+    private val logger = LoggerFactory.getLogger(ConsentNotificationRestController::class.java)
+
+    @PostMapping(consumes = [MediaType.APPLICATION_JSON_VALUE])
+    fun notification(
+        @RequestBody notification: GicsConsentNotification,
+    ): ResponseEntity<Unit> {
+        logger.debug("Accepted consent notification '{}'", notification.type)
+        if (consentNotificationProcessor.process(notification).isEmpty()) {
+            return ResponseEntity.badRequest().build()
+        }
+        return ResponseEntity.accepted().build()
+    }
+}
@@ -55,6 +55,8 @@ data class Request(
     @Column("submission_accepted") var submissionAccepted: Boolean = false,
     @Column("followup_count") var followupCount: Int = 0,
     @Column("expected_followup_count") var expectedFollowupCount: Int = 0,
+    @Column("consent_stale") var consentStale: Boolean = false,
+    @Column("transformation_version") var transformationVersion: String? = null,
 ) {
   constructor(
       uuid: RequestId,
@@ -153,6 +155,18 @@ interface RequestRepository :
   )
   fun findPatientUniqueDeleteStates(): List<CountedState>
 
+  /**
+   * Finds pseudonyms of patients registered for consent re-evaluation whose latest request ended
+   * without consent or is still the request the patient was registered with.
+   */
+  @Query(
+      "SELECT latest.patient_pseudonym FROM (" +
+          "SELECT patient_pseudonym, uuid, status, rank() OVER (PARTITION BY patient_pseudonym ORDER BY processed_at DESC) AS rank FROM request" +
+          ") latest JOIN consent_recheck ON consent_recheck.patient_pseudonym = latest.patient_pseudonym " +
+          "WHERE latest.rank = 1 AND (latest.status IN ('NO_CONSENT', 'BLOCKED_INITIAL') OR latest.uuid = consent_recheck.request_uuid);"
+  )
+  fun findPatientPseudonymsForConsentRecheck(): List<String>
+
   fun findByPatientPseudonymContainingIgnoreCaseOrTanContainingIgnoreCase(patientPseudonym: PatientPseudonym, tan: Tan, pageable: Pageable): Page<Request>
 
   fun findByPatientPseudonymContainingIgnoreCaseOrTanContainingIgnoreCase(patientPseudonym: PatientPseudonym, tan: Tan): List<Request>
@@ -31,8 +31,13 @@ import org.springframework.kafka.core.KafkaTemplate
 import org.springframework.retry.support.RetryTemplate
 import tools.jackson.databind.json.JsonMapper
 
+/**
+ * Sends MTB files to Kafka. Record values are sent as serialized bytes, so the payload serialized
+ * for the fingerprint is sent without encoding it again. The producer uses a byte array value
+ * serializer, see `spring.kafka.producer.value-serializer`.
+ */
 class KafkaMtbFileSender(
-    private val kafkaTemplate: KafkaTemplate<String, String>,
+    private val kafkaTemplate: KafkaTemplate<String, ByteArray>,
     private val kafkaProperties: KafkaProperties,
     private val retryTemplate: RetryTemplate,
     private val jsonMapper: JsonMapper,
@@ -46,7 +51,7 @@ class KafkaMtbFileSender(
                     ProducerRecord(
                         kafkaProperties.outputTopic,
                         key(request),
-                        jsonMapper.writeValueAsString(request.content),
+                        request.payload?.bytes() ?: jsonMapper.writeValueAsBytes(request.content),
                     )
                 record.headers().add("requestId", request.requestId.value.toByteArray())
                 record.headers().add("requestMethod", "POST".toByteArray())
@@ -83,7 +88,7 @@ class KafkaMtbFileSender(
                     ProducerRecord(
                         kafkaProperties.outputTopic,
                         key(request),
-                        jsonMapper.writeValueAsString(
+                        jsonMapper.writeValueAsBytes(
                             DnpmV2MtbFileRequest(request.requestId, dummyMtbFile),
                         ),
                     )
@@ -0,0 +1,59 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2025-2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dev.dnpm.etl.processor.output
+
+import org.apache.commons.codec.digest.DigestUtils
+import tools.jackson.databind.json.JsonMapper
+import java.io.OutputStream
+
+/**
+ * Serialized JSON content of an MTB file request
+ *
+ * Content is serialized once and the same UTF-8 bytes are used for the fingerprint and as Kafka record value or
+ * HTTP body. Bytes are never handed out for modification, content must not be changed after creating the payload.
+ *
+ * @since 0.17.0
+ */
+class MtbPayload private constructor(
+    private val bytes: ByteArray,
+) {
+    fun sha256(): ByteArray = DigestUtils.sha256(bytes)
+
+    fun writeTo(outputStream: OutputStream) = outputStream.write(bytes)
+
+    /**
+     * Returns the serialized bytes without copying them to be used as HTTP body. Must not be modified.
+     */
+    internal fun bytes(): ByteArray = bytes
+
+    override fun equals(other: Any?): Boolean = other is MtbPayload && bytes.contentEquals(other.bytes)
+
+    override fun hashCode(): Int = bytes.contentHashCode()
+
+    companion object {
+        @JvmStatic
+        fun of(
+            content: Any,
+            jsonMapper: JsonMapper,
+        ): MtbPayload = MtbPayload(jsonMapper.writeValueAsBytes(content))
+    }
+}
@@ -20,9 +20,11 @@
 
 package dev.dnpm.etl.processor.output
 
+import com.fasterxml.jackson.annotation.JsonIgnore
 import dev.dnpm.etl.processor.PatientPseudonym
 import dev.dnpm.etl.processor.RequestId
 import dev.pcvolkmer.mv64e.mtb.Mtb
+import tools.jackson.databind.json.JsonMapper
 
 interface MtbRequest {
     val requestId: RequestId
@@ -32,14 +34,32 @@ sealed interface MtbFileRequest<out T> : MtbRequest {
     override val requestId: RequestId
     val content: T
 
+    /**
+     * Serialized content if already available, senders serialize the content otherwise
+     *
+     * @since 0.17.0
+     */
+    val payload: MtbPayload?
+
     fun patientPseudonym(): PatientPseudonym
+
+    /**
+     * Returns a request carrying the serialized content, content must not be changed afterwards
+     *
+     * @since 0.17.0
+     */
+    fun withPayload(jsonMapper: JsonMapper): MtbFileRequest<T>
 }
 
 data class DnpmV2MtbFileRequest(
     override val requestId: RequestId,
     override val content: Mtb,
+    @get:JsonIgnore override val payload: MtbPayload? = null,
 ) : MtbFileRequest<Mtb> {
     override fun patientPseudonym(): PatientPseudonym = PatientPseudonym(content.patient.id)
+
+    override fun withPayload(jsonMapper: JsonMapper): DnpmV2MtbFileRequest =
+        if (payload != null) this else copy(payload = MtbPayload.of(content, jsonMapper))
 }
 
 data class DeleteRequest(
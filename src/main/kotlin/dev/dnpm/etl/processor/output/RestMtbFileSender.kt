@@ -26,6 +26,7 @@ import dev.dnpm.etl.processor.config.RestTargetProperties
 import dev.dnpm.etl.processor.monitoring.ReportService
 import dev.dnpm.etl.processor.monitoring.RequestStatus
 import dev.dnpm.etl.processor.monitoring.asRequestStatus
+import dev.dnpm.etl.processor.resilience.CallNotPermittedException
 import org.slf4j.LoggerFactory
 import org.springframework.http.HttpEntity
 import org.springframework.http.HttpHeaders
@@ -53,7 +54,8 @@ abstract class RestMtbFileSender(
         try {
             return retryTemplate.execute<MtbFileSender.Response, Exception> {
                 val headers = getHttpHeaders(request)
-                val entityReq = HttpEntity(request.content, headers)
+                // Already serialized content is written as is
+                val entityReq = HttpEntity(request.payload?.bytes() ?: request.content, headers)
                 val response =
                     restTemplate.exchange<String>(sendUrl(), HttpMethod.POST, entityReq)
                 if (!response.statusCode.is2xxSuccessful) {
@@ -78,6 +80,9 @@ abstract class RestMtbFileSender(
                 reportService.deserialize(e.responseBodyAsString).asRequestStatus(),
                 e.responseBodyAsString,
             )
+        } catch (e: CallNotPermittedException) {
+            logger.error("Remote system not available: {}", e.message)
+            return MtbFileSender.Response(RequestStatus.ERROR, "Zielsystem derzeit nicht verfügbar")
         }
         return MtbFileSender.Response(RequestStatus.ERROR, "Sonstiger Fehler bei der Übertragung")
     }
@@ -96,6 +101,9 @@ abstract class RestMtbFileSender(
         } catch (e: RestClientException) {
             logger.info(restTargetProperties.uri!!.toString())
             logger.error("Cannot send data to remote system", e)
+        } catch (e: CallNotPermittedException) {
+            logger.error("Remote system not available: {}", e.message)
+            return MtbFileSender.Response(RequestStatus.ERROR, "Zielsystem derzeit nicht verfügbar")
         }
         return MtbFileSender.Response(RequestStatus.ERROR, "Sonstiger Fehler bei der Übertragung")
     }
@@ -0,0 +1,177 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import dev.dnpm.etl.processor.config.GPasHedgingProperties
+import org.slf4j.LoggerFactory
+import java.time.Duration
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorCompletionService
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import kotlin.math.ceil
+
+/**
+ * Client side load balancing for multiple gPAS endpoints.
+ *
+ * Each call uses the endpoint with the least outstanding requests. For idempotent calls, a hedged
+ * request can be sent to another endpoint if there is no response after the configured percentile
+ * of recent latencies or if the first request fails before. The first successful response is used, the other request is cancelled by
+ * interrupting its thread. Outstanding requests of an endpoint are counted until the request has
+ * actually finished, including cancelled requests.
+ *
+ * @since 0.17.0
+ */
+class GpasLoadBalancer(
+    endpoints: List<String>,
+    private val hedging: GPasHedgingProperties = GPasHedgingProperties(),
+    private val executor: ExecutorService = Executors.newVirtualThreadPerTaskExecutor(),
+) : AutoCloseable {
+    private val logger = LoggerFactory.getLogger(GpasLoadBalancer::class.java)
+
+    private val endpoints = endpoints.distinct().map { Endpoint(it) }
+    private val next = AtomicInteger()
+    private val latencies = LongArray(LATENCY_WINDOW)
+    private var recordedLatencies = 0L
+
+    init {
+        require(this.endpoints.isNotEmpty()) { "No gPAS endpoint configured" }
+    }
+
+    fun endpoints(): List<String> = endpoints.map { it.uri }
+
+    /**
+     * Executes the call using the endpoint with the least outstanding requests
+     *
+     * @param idempotent true if the call may be sent to another endpoint as hedged request
+     */
+    fun <T> execute(
+        idempotent: Boolean,
+        call: (String) -> T,
+    ): T {
+        if (!idempotent || !hedging.enabled || endpoints.size < 2) {
+            return invoke(select(null), call)
+        }
+
+        val primary = select(null)
+        val completionService = ExecutorCompletionService<T>(executor)
+        val attempts = mutableListOf(completionService.submit { invoke(primary, call) })
+        try {
+            val completed = completionService.poll(hedgeDelay().toNanos(), TimeUnit.NANOSECONDS)
+            if (null != completed) {
+                try {
+                    return completed.get()
+                } catch (e: ExecutionException) {
+                    logger.trace("Request to gPAS failed - sending request to other endpoint", e)
+                }
+            }
+
+            val secondary = select(primary)
+            logger.debug("No response from gPAS endpoint '{}' - sending hedged request to '{}'", primary.uri, secondary.uri)
+            attempts.add(completionService.submit { invoke(secondary, call) })
+
+            if (null == completed) {
+                try {
+                    return completionService.take().get()
+                } catch (e: ExecutionException) {
+                    logger.trace("Request to gPAS failed - waiting for other request", e)
+                }
+            }
+            return completionService.take().get()
+        } catch (e: ExecutionException) {
+            throw unwrap(e)
+        } finally {
+            // Interrupts the running request that has not been used
+            attempts.forEach { it.cancel(true) }
+        }
+    }
+
+    fun outstandingRequests(uri: String): Int = endpoints.firstOrNull { it.uri == uri }?.outstanding?.get() ?: 0
+
+    /**
+     * Returns the delay before a hedged request is sent
+     */
+    fun hedgeDelay(): Duration {
+        val sorted =
+            synchronized(latencies) {
+                if (recordedLatencies < MIN_SAMPLES) {
+                    return hedging.initialDelay
+                }
+                latencies.copyOf(minOf(recordedLatencies, LATENCY_WINDOW.toLong()).toInt()).apply { sort() }
+            }
+        val index = (ceil(hedging.percentile * sorted.size).toInt() - 1).coerceIn(0, sorted.size - 1)
+        return maxOf(Duration.ofNanos(sorted[index]), hedging.minDelay)
+    }
+
+    override fun close() {
+        executor.shutdownNow()
+    }
+
+    private fun select(exclude: Endpoint?): Endpoint {
+        // Start at rotating offset to distribute requests evenly if outstanding requests are equal
+        val offset = Math.floorMod(next.getAndIncrement(), endpoints.size)
+        return endpoints.indices
+            .map { endpoints[(offset + it) % endpoints.size] }
+            .filter { it != exclude }
+            .minBy { it.outstanding.get() }
+    }
+
+    private fun <T> invoke(
+        endpoint: Endpoint,
+        call: (String) -> T,
+    ): T {
+        endpoint.outstanding.incrementAndGet()
+        val start = System.nanoTime()
+        try {
+            return call(endpoint.uri).also { recordLatency(System.nanoTime() - start) }
+        } finally {
+            endpoint.outstanding.decrementAndGet()
+        }
+    }
+
+    private fun recordLatency(nanos: Long) {
+        synchronized(latencies) {
+            latencies[(recordedLatencies % LATENCY_WINDOW).toInt()] = nanos
+            recordedLatencies++
+        }
+    }
+
+    private class Endpoint(
+        val uri: String,
+    ) {
+        val outstanding = AtomicInteger()
+    }
+
+    companion object {
+        private const val LATENCY_WINDOW = 100
+        private const val MIN_SAMPLES = 20
+
+        private fun unwrap(e: ExecutionException): Throwable {
+            var cause: Throwable = e
+            while (cause is ExecutionException && null != cause.cause) {
+                cause = cause.cause!!
+            }
+            return cause
+        }
+    }
+}
@@ -22,6 +22,9 @@ package dev.dnpm.etl.processor.pseudonym
 
 import dev.dnpm.etl.processor.config.AppFhirConfig
 import dev.dnpm.etl.processor.config.GPasConfigProperties
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
 import org.springframework.retry.support.RetryTemplate
 
 class GpasSoapPseudonymGenerator(
@@ -29,14 +32,39 @@ class GpasSoapPseudonymGenerator(
     private val retryTemplate: RetryTemplate,
     private val gpasSoapService: GpasSoapService,
     private val appFhirConfig: AppFhirConfig,
+    private val meterRegistry: MeterRegistry = SimpleMeterRegistry(),
 ) : Generator {
     override fun generate(id: String): String =
         retryTemplate.execute<String, Exception> {
-            gpasSoapService.getOrCreatePseudonymFor(id, gpasCfg.patientDomain)
+            timed("getOrCreatePseudonymFor") {
+                gpasSoapService.getOrCreatePseudonymFor(id, gpasCfg.patientDomain)
+            }
         }
 
     override fun generateGenomDeTan(id: String): String =
         retryTemplate.execute<String, Exception> {
-            gpasSoapService.createPseudonymsFor(id, gpasCfg.genomDeTanDomain, 1).first()
+            timed("createPseudonymsFor") {
+                gpasSoapService.createPseudonymsFor(id, gpasCfg.genomDeTanDomain, 1).first()
+            }
         }
+
+    private fun <T> timed(
+        operation: String,
+        call: () -> T,
+    ): T {
+        val sample = Timer.start(meterRegistry)
+        var outcome = "error"
+        try {
+            return call().also { outcome = "success" }
+        } finally {
+            sample.stop(
+                Timer
+                    .builder("etl.gpas.soap.requests")
+                    .description("Latency of gPAS SOAP requests")
+                    .tag("operation", operation)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry),
+            )
+        }
+    }
 }
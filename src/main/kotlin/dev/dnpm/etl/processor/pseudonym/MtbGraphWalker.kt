@@ -0,0 +1,358 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import dev.pcvolkmer.mv64e.mtb.Mtb
+import java.beans.Introspector
+import java.lang.invoke.MethodHandle
+import java.lang.invoke.MethodHandles
+import java.util.*
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.RecursiveAction
+
+/**
+ * Walks the object graph of an [Mtb] once, replacing every patient reference with the patient
+ * pseudonym and rehashing all content IDs matching one of the configured paths.
+ *
+ * Bean properties of the DTO classes are resolved once per class and cached as [MethodHandle]s.
+ * Collections are traversed by index, so a walk does not copy any part of the document.
+ *
+ * Paths are property names separated by dots, list elements do not add a path segment, e.g.
+ * `carePlans.medicationRecommendations.supportingVariants.variant.id`.
+ *
+ * Large documents can be walked in parallel on a fork/join pool. The sections listed in
+ * [PARALLEL_SECTIONS] are processed concurrently and large lists are split into chunks. Each
+ * element is modified by exactly one task, so the result is the same as for a sequential walk.
+ *
+ * @since 0.17.0
+ */
+class MtbGraphWalker(
+    anonymizedPaths: Collection<String> = DEFAULT_ANONYMIZED_PATHS,
+    private val pool: ForkJoinPool = ForkJoinPool.commonPool(),
+) {
+    private val rules = RuleNode.of(anonymizedPaths)
+
+    /**
+     * Walks the given MTB
+     *
+     * @param mtb The MTB to be modified in place
+     * @param patientPseudonym The pseudonym to be used for patient references
+     * @param anonymize The function to be applied on content IDs
+     * @param coverage Optional coverage report to be filled with all visited ID fields
+     * @param parallelThreshold Minimal number of elements in [PARALLEL_SECTIONS] to walk the MTB in
+     *   parallel, zero to always walk sequentially. Ignored if a coverage report is requested.
+     */
+    fun walk(
+        mtb: Mtb,
+        patientPseudonym: String,
+        anonymize: (String) -> String,
+        coverage: Coverage? = null,
+        parallelThreshold: Int = 0,
+    ) {
+        if (null == coverage && parallelThreshold > 0 && estimateSize(mtb) >= parallelThreshold) {
+            val context = Context(patientPseudonym, anonymize, null, true)
+            pool.invoke(
+                object : RecursiveAction() {
+                    override fun compute() = visit(mtb, rules, null, context)
+                },
+            )
+            return
+        }
+        visit(mtb, rules, if (null == coverage) null else "", Context(patientPseudonym, anonymize, coverage, false))
+    }
+
+    private fun visit(
+        obj: Any,
+        node: RuleNode?,
+        path: String?,
+        context: Context,
+    ) {
+        val properties = PROPERTIES.get(obj.javaClass)
+        var forked: MutableList<ForkJoinTask<*>>? = null
+        for (i in properties.indices) {
+            val property = properties[i]
+            val value = property.get(obj) ?: continue
+            val childNode = node?.children?.get(property.name)
+            val childPath = path?.let { if (it.isEmpty()) property.name else "$it.${property.name}" }
+
+            when {
+                property.name == PATIENT && isDto(value) -> {
+                    PROPERTIES.get(value.javaClass).firstOrNull { it.name == ID }?.set(value, context.patientPseudonym)
+                }
+
+                value is String -> {
+                    val anonymize = childNode?.terminal == true
+                    if (anonymize) {
+                        property.set(obj, context.anonymize(value))
+                    }
+                    if (null != childPath && (anonymize || property.name == ID)) {
+                        context.coverage?.record(childPath, anonymize)
+                    }
+                }
+
+                value is List<*> -> {
+                    val section = obj is Mtb && property.name in PARALLEL_SECTIONS
+                    if (context.parallel && value.isNotEmpty() && (section || value.size > CHUNK_SIZE)) {
+                        if (null == forked) {
+                            forked = mutableListOf()
+                        }
+                        val grain = if (section) 1 else CHUNK_SIZE
+                        forked.add(ListTask(value, childNode, context, 0, value.size, grain).fork())
+                    } else {
+                        visitItems(value, childNode, childPath, context, 0, value.size)
+                    }
+                }
+
+                isDto(value) -> visit(value, childNode, childPath, context)
+            }
+        }
+        forked?.forEach { it.join() }
+    }
+
+    private fun visitItems(
+        list: List<*>,
+        node: RuleNode?,
+        path: String?,
+        context: Context,
+        from: Int,
+        to: Int,
+    ) {
+        for (j in from until to) {
+            val item = list[j]
+            if (null != item && isDto(item)) {
+                visit(item, node, path, context)
+            }
+        }
+    }
+
+    private inner class ListTask(
+        private val list: List<*>,
+        private val node: RuleNode?,
+        private val context: Context,
+        private val from: Int,
+        private val to: Int,
+        private val grain: Int,
+    ) : RecursiveAction() {
+        override fun compute() {
+            if (to - from <= grain) {
+                visitItems(list, node, null, context, from, to)
+                return
+            }
+            val middle = (from + to) ushr 1
+            invokeAll(
+                ListTask(list, node, context, from, middle, grain),
+                ListTask(list, node, context, middle, to, grain),
+            )
+        }
+    }
+
+    /**
+     * Estimates the size of an MTB by the number of elements in [PARALLEL_SECTIONS], including the
+     * size of lists within these elements, e.g. variants of NGS reports.
+     */
+    private fun estimateSize(mtb: Mtb): Int =
+        PROPERTIES.get(mtb.javaClass).filter { it.name in PARALLEL_SECTIONS }.sumOf { section ->
+            (section.get(mtb) as? List<*>)?.sumOf { item -> 1 + (item?.let { nestedListSize(it, 0) } ?: 0) } ?: 0
+        }
+
+    private fun nestedListSize(
+        obj: Any,
+        depth: Int,
+    ): Int {
+        if (!isDto(obj) || depth > MAX_ESTIMATE_DEPTH) {
+            return 0
+        }
+        return PROPERTIES.get(obj.javaClass).sumOf { property ->
+            when (val value = property.get(obj)) {
+                is List<*> -> value.size
+                null -> 0
+                else -> nestedListSize(value, depth + 1)
+            }
+        }
+    }
+
+    private class Context(
+        val patientPseudonym: String,
+        val anonymize: (String) -> String,
+        val coverage: Coverage?,
+        val parallel: Boolean,
+    )
+
+    private class RuleNode {
+        val children = mutableMapOf<String, RuleNode>()
+        var terminal = false
+
+        companion object {
+            fun of(paths: Collection<String>): RuleNode {
+                val root = RuleNode()
+                paths.forEach { path ->
+                    path.split(".").fold(root) { node, segment -> node.children.getOrPut(segment) { RuleNode() } }.terminal = true
+                }
+                return root
+            }
+        }
+    }
+
+    private class BeanProperty(
+        val name: String,
+        private val getter: MethodHandle,
+        private val setter: MethodHandle?,
+    ) {
+        fun get(obj: Any): Any? = getter.invoke(obj)
+
+        fun set(
+            obj: Any,
+            value: Any?,
+        ) {
+            setter?.invoke(obj, value)
+        }
+    }
+
+    /**
+     * Coverage report of all ID fields visited during a walk
+     */
+    class Coverage {
+        private val visited = TreeMap<String, Boolean>()
+
+        internal fun record(
+            path: String,
+            anonymized: Boolean,
+        ) {
+            visited[path] = anonymized
+        }
+
+        /** Paths of all fields that have been anonymized */
+        fun anonymizedPaths(): Set<String> = visited.filterValues { it }.keys
+
+        /** Paths of all ID fields that have been visited but not anonymized */
+        fun unhandledIdPaths(): Set<String> = visited.filterValues { !it }.keys
+    }
+
+    companion object {
+        private const val ID = "id"
+        private const val PATIENT = "patient"
+        private const val DTO_PACKAGE = "dev.pcvolkmer.mv64e.mtb"
+        private const val CHUNK_SIZE = 512
+        private const val MAX_ESTIMATE_DEPTH = 2
+
+        /** Large independent sections of an MTB to be walked in parallel */
+        val PARALLEL_SECTIONS = setOf("ngsReports", "histologyReports", "carePlans", "systemicTherapies")
+
+        private val LOOKUP = MethodHandles.publicLookup()
+
+        private val PROPERTIES =
+            object : ClassValue<Array<BeanProperty>>() {
+                override fun computeValue(type: Class<*>): Array<BeanProperty> =
+                    Introspector
+                        .getBeanInfo(type, Any::class.java)
+                        .propertyDescriptors
+                        .filter { null != it.readMethod }
+                        .map {
+                            BeanProperty(
+                                it.name,
+                                LOOKUP.unreflect(it.readMethod),
+                                it.writeMethod?.let { writeMethod -> LOOKUP.unreflect(writeMethod) },
+                            )
+                        }.toTypedArray()
+            }
+
+        private fun isDto(value: Any): Boolean =
+            value !is Map<*, *> && !value.javaClass.isEnum && value.javaClass.packageName.startsWith(DTO_PACKAGE)
+
+        /** Content IDs rehashed by [anonymizeContentWith] */
+        val DEFAULT_ANONYMIZED_PATHS =
+            listOf(
+                "episodesOfCare.id",
+                "episodesOfCare.diagnoses.id",
+                "carePlans.id",
+                "carePlans.reason.id",
+                "carePlans.geneticCounselingRecommendation.id",
+                "carePlans.rebiopsyRequests.id",
+                "carePlans.rebiopsyRequests.tumorEntity.id",
+                "carePlans.histologyReevaluationRequests.id",
+                "carePlans.histologyReevaluationRequests.specimen.id",
+                "carePlans.medicationRecommendations.id",
+                "carePlans.medicationRecommendations.reason.id",
+                "carePlans.medicationRecommendations.supportingVariants.variant.id",
+                "carePlans.studyEnrollmentRecommendations.id",
+                "carePlans.studyEnrollmentRecommendations.reason.id",
+                "carePlans.studyEnrollmentRecommendations.supportingVariants.variant.id",
+                "carePlans.procedureRecommendations.id",
+                "carePlans.procedureRecommendations.reason.id",
+                "carePlans.procedureRecommendations.supportingVariants.variant.id",
+                "responses.id",
+                "responses.therapy.id",
+                "diagnoses.id",
+                "diagnoses.histology.id",
+                "ngsReports.id",
+                "ngsReports.specimen.id",
+                "ngsReports.results.tumorCellContent.id",
+                "ngsReports.results.tumorCellContent.specimen.id",
+                "ngsReports.results.rnaFusions.id",
+                "ngsReports.results.simpleVariants.id",
+                "ngsReports.results.simpleVariants.transcriptId.value",
+                "ngsReports.results.tmb.id",
+                "ngsReports.results.tmb.specimen.id",
+                "ngsReports.results.brcaness.id",
+                "ngsReports.results.brcaness.specimen.id",
+                "ngsReports.results.copyNumberVariants.id",
+                "ngsReports.results.hrdScore.id",
+                "ngsReports.results.hrdScore.specimen.id",
+                "ngsReports.results.rnaSeqs.id",
+                "ngsReports.results.dnaFusions.id",
+                "histologyReports.id",
+                "histologyReports.specimen.id",
+                "histologyReports.results.tumorCellContent.id",
+                "histologyReports.results.tumorCellContent.specimen.id",
+                "histologyReports.results.tumorMorphology.id",
+                "histologyReports.results.tumorMorphology.specimen.id",
+                "claimResponses.id",
+                "claimResponses.claim.id",
+                "claims.id",
+                "claims.recommendation.id",
+                "familyMemberHistories.id",
+                "guidelineProcedures.id",
+                "guidelineProcedures.reason.id",
+                "guidelineProcedures.basedOn.id",
+                "guidelineTherapies.id",
+                "guidelineTherapies.reason.id",
+                "guidelineTherapies.basedOn.id",
+                "ihcReports.id",
+                "ihcReports.specimen.id",
+                "ihcReports.results.proteinExpression.id",
+                "msiFindings.id",
+                "msiFindings.specimen.id",
+                "performanceStatus.id",
+                "priorDiagnosticReports.id",
+                "priorDiagnosticReports.specimen.id",
+                "specimens.id",
+                "specimens.diagnosis.id",
+                "systemicTherapies.history.id",
+                "systemicTherapies.history.reason.id",
+                "systemicTherapies.history.basedOn.id",
+            )
+
+        /** Shared instance using [DEFAULT_ANONYMIZED_PATHS] */
+        @JvmStatic
+        val DEFAULT = MtbGraphWalker()
+    }
+}
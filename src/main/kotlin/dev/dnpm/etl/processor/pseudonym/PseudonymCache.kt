@@ -0,0 +1,213 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import dev.dnpm.etl.processor.PatientId
+import dev.dnpm.etl.processor.config.PseudonymCacheConfigProperties
+import org.apache.commons.codec.digest.HmacAlgorithms
+import org.apache.commons.codec.digest.HmacUtils
+import org.slf4j.LoggerFactory
+import org.springframework.data.annotation.Id
+import org.springframework.data.jdbc.repository.query.Modifying
+import org.springframework.data.jdbc.repository.query.Query
+import org.springframework.data.relational.core.mapping.Table
+import org.springframework.data.repository.CrudRepository
+import org.springframework.data.repository.query.Param
+import org.springframework.scheduling.annotation.Scheduled
+import java.time.Clock
+import java.time.Instant
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Pseudonym cache shared by all instances using the same database.
+ *
+ * Patient IDs are never stored. Entries are looked up by HMAC of the patient ID, the key must be
+ * changed if the pseudonym domain changes. A small in-memory near cache avoids database roundtrips
+ * for recently used entries, concurrent requests for the same patient ID result in a single call
+ * to the pseudonym generator.
+ *
+ * @since 0.17.0
+ */
+class PseudonymCache(
+    private val repository: PseudonymCacheRepository,
+    private val configProperties: PseudonymCacheConfigProperties,
+    private val clock: Clock = Clock.systemUTC(),
+) {
+    private val logger = LoggerFactory.getLogger(PseudonymCache::class.java)
+
+    private val hmacKey =
+        configProperties.hmacKey?.takeIf { it.isNotBlank() }?.toByteArray()
+            ?: throw IllegalArgumentException("No HMAC key for pseudonym cache configured")
+
+    private val nearCache =
+        object : LinkedHashMap<String, PseudonymCacheEntry>(16, 0.75f, true) {
+            override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, PseudonymCacheEntry>?): Boolean =
+                size > configProperties.nearCacheSize
+        }
+
+    private val inFlight = ConcurrentHashMap<String, CompletableFuture<String>>()
+
+    /**
+     * Returns the cached pseudonym for given patient ID or uses the generator function and caches its result
+     */
+    fun getOrCreate(
+        patientId: PatientId,
+        generate: () -> String,
+    ): String {
+        val key = hash(patientId)
+
+        nearCacheEntry(key)?.let { return it.pseudonym }
+
+        val future = CompletableFuture<String>()
+        val running = inFlight.putIfAbsent(key, future)
+        if (null != running) {
+            return try {
+                running.join()
+            } catch (e: CompletionException) {
+                throw e.cause ?: e
+            }
+        }
+
+        try {
+            val pseudonym = load(key, generate)
+            future.complete(pseudonym)
+            return pseudonym
+        } catch (e: Throwable) {
+            future.completeExceptionally(e)
+            throw e
+        } finally {
+            inFlight.remove(key, future)
+        }
+    }
+
+    /**
+     * Removes the cached pseudonym for given patient ID
+     *
+     * @return true if there was a stored entry
+     */
+    fun invalidate(patientId: PatientId): Boolean {
+        val key = hash(patientId)
+        synchronized(nearCache) {
+            nearCache.remove(key)
+        }
+        return repository.deleteByPatientIdHash(key) > 0
+    }
+
+    /**
+     * Removes all entries older than configured time to live
+     */
+    @Scheduled(cron = "\${app.pseudonymize.cache.purge-cron:0 0 * * * *}")
+    fun purgeExpired() {
+        val deleted = repository.deleteByCreatedAtBefore(clock.instant().minus(configProperties.ttl))
+        synchronized(nearCache) {
+            nearCache.values.removeIf { isExpired(it) }
+        }
+        if (deleted > 0) {
+            logger.info("Removed {} expired pseudonym cache entries", deleted)
+        }
+    }
+
+    private fun load(
+        key: String,
+        generate: () -> String,
+    ): String {
+        val stored =
+            try {
+                repository.findByPatientIdHash(key)
+            } catch (e: RuntimeException) {
+                logger.warn("Cannot read pseudonym cache - using pseudonym generator", e)
+                null
+            }
+
+        if (null != stored && !isExpired(stored)) {
+            putNearCache(key, stored)
+            return stored.pseudonym
+        }
+
+        val pseudonym = generate()
+        val entry =
+            stored?.copy(pseudonym = pseudonym, createdAt = clock.instant())
+                ?: PseudonymCacheEntry(patientIdHash = key, pseudonym = pseudonym, createdAt = clock.instant())
+
+        try {
+            putNearCache(key, repository.save(entry))
+        } catch (e: RuntimeException) {
+            // Another instance might have cached the same patient in the meantime
+            logger.debug("Cannot write pseudonym cache entry", e)
+            putNearCache(key, entry)
+        }
+
+        return pseudonym
+    }
+
+    private fun nearCacheEntry(key: String): PseudonymCacheEntry? =
+        synchronized(nearCache) {
+            val entry = nearCache[key] ?: return null
+            if (isExpired(entry)) {
+                nearCache.remove(key)
+                return null
+            }
+            entry
+        }
+
+    private fun putNearCache(
+        key: String,
+        entry: PseudonymCacheEntry,
+    ) {
+        if (configProperties.nearCacheSize <= 0) {
+            return
+        }
+        synchronized(nearCache) {
+            nearCache[key] = entry
+        }
+    }
+
+    private fun isExpired(entry: PseudonymCacheEntry): Boolean = entry.createdAt.plus(configProperties.ttl).isBefore(clock.instant())
+
+    // HmacUtils is not thread safe, so use a new instance for each hash
+    private fun hash(patientId: PatientId): String = HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacKey).hmacHex(patientId.value)
+}
+
+@Table("pseudonym_cache")
+data class PseudonymCacheEntry(
+    @Id val id: Long? = null,
+    val patientIdHash: String,
+    val pseudonym: String,
+    val createdAt: Instant = Instant.now(),
+)
+
+interface PseudonymCacheRepository : CrudRepository<PseudonymCacheEntry, Long> {
+    fun findByPatientIdHash(patientIdHash: String): PseudonymCacheEntry?
+
+    @Modifying
+    @Query("DELETE FROM pseudonym_cache WHERE patient_id_hash = :patientIdHash")
+    fun deleteByPatientIdHash(
+        @Param("patientIdHash") patientIdHash: String,
+    ): Int
+
+    @Modifying
+    @Query("DELETE FROM pseudonym_cache WHERE created_at < :createdAt")
+    fun deleteByCreatedAtBefore(
+        @Param("createdAt") createdAt: Instant,
+    ): Int
+}
@@ -27,15 +27,24 @@ import dev.dnpm.etl.processor.config.PseudonymizeConfigProperties
 class PseudonymizeService(
     private val generator: Generator,
     private val configProperties: PseudonymizeConfigProperties,
+    private val pseudonymCache: PseudonymCache? = null,
 ) {
     fun patientPseudonym(patientId: PatientId): PatientPseudonym =
+        if (null == pseudonymCache) {
+            PatientPseudonym(generatePatientPseudonym(patientId))
+        } else {
+            PatientPseudonym(pseudonymCache.getOrCreate(patientId) { generatePatientPseudonym(patientId) })
+        }
+
+    private fun generatePatientPseudonym(patientId: PatientId): String =
         when (generator) {
-            is GpasPseudonymGenerator -> PatientPseudonym(generator.generate(patientId.value))
-            else ->
-                PatientPseudonym("${configProperties.prefix}_${generator.generate(patientId.value)}")
+            is GpasPseudonymGenerator -> generator.generate(patientId.value)
+            else -> "${configProperties.prefix}_${generator.generate(patientId.value)}"
         }
 
     fun genomDeTan(patientId: PatientId): String = generator.generateGenomDeTan(patientId.value)
 
     fun prefix(): String = configProperties.prefix
+
+    fun parallelThreshold(): Int = configProperties.parallelThreshold
 }
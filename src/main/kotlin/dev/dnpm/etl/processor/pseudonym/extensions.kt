@@ -21,6 +21,7 @@
 package dev.dnpm.etl.processor.pseudonym
 
 import dev.dnpm.etl.processor.PatientId
+import dev.dnpm.etl.processor.PatientPseudonym
 import dev.pcvolkmer.mv64e.mtb.ModelProjectConsent
 import dev.pcvolkmer.mv64e.mtb.Mtb
 import dev.pcvolkmer.mv64e.mtb.MvhMetadata
@@ -99,6 +100,10 @@ infix fun Mtb.pseudonymizeWith(pseudonymizeService: PseudonymizeService) {
 
   this.msiFindings?.filterNotNull()?.forEach { it.patient?.id = patientPseudonym }
 
+  this.pseudonymizeResearchConsents(patientPseudonym)
+}
+
+private fun Mtb.pseudonymizeResearchConsents(patientPseudonym: String) {
   this.metadata?.researchConsents?.filterNotNull()?.forEach { researchConsent ->
     if (researchConsent.contains("patient")) {
       // here we expect only a patient reference any other data like display
@@ -109,6 +114,11 @@ infix fun Mtb.pseudonymizeWith(pseudonymizeService: PseudonymizeService) {
   }
 }
 
+private fun anonymizedId(prefix: String, id: String): String {
+  val hash = DigestUtils.sha256Hex("$prefix-$id").substring(0, 41).lowercase()
+  return "$prefix$hash"
+}
+
 /**
  * Creates new hash of content IDs with given prefix except for patient IDs
  *
@@ -119,10 +129,7 @@ infix fun Mtb.pseudonymizeWith(pseudonymizeService: PseudonymizeService) {
 infix fun Mtb.anonymizeContentWith(pseudonymizeService: PseudonymizeService) {
   val prefix = pseudonymizeService.prefix()
 
-  fun anonymize(id: String): String {
-    val hash = DigestUtils.sha256Hex("$prefix-$id").substring(0, 41).lowercase()
-    return "$prefix$hash"
-  }
+  fun anonymize(id: String): String = anonymizedId(prefix, id)
 
   this.episodesOfCare?.filterNotNull()?.forEach { episodeOfCare ->
     episodeOfCare.apply { id = id?.let(::anonymize) }
@@ -280,6 +287,44 @@ infix fun Mtb.anonymizeContentWith(pseudonymizeService: PseudonymizeService) {
   }
 }
 
+/**
+ * Replaces patient ID with generated patient pseudonym and creates new hash of content IDs in a
+ * single pass over the MTB file. This has the same result as applying [pseudonymizeWith] and
+ * [anonymizeContentWith], but does not traverse the content twice.
+ *
+ * @param pseudonymizeService The pseudonymizeService to be used
+ * @since 0.17.0
+ */
+infix fun Mtb.pseudonymizeAndAnonymizeWith(pseudonymizeService: PseudonymizeService) {
+  this.pseudonymizeAndAnonymizeWith(
+      pseudonymizeService,
+      pseudonymizeService.patientPseudonym(PatientId(this.patient.id)),
+  )
+}
+
+/**
+ * Same as [pseudonymizeAndAnonymizeWith] but uses an already known patient pseudonym
+ *
+ * @param pseudonymizeService The pseudonymizeService to be used
+ * @param patientPseudonym The patient pseudonym, e.g. requested concurrently with other lookups
+ * @since 0.17.0
+ */
+fun Mtb.pseudonymizeAndAnonymizeWith(
+    pseudonymizeService: PseudonymizeService,
+    patientPseudonym: PatientPseudonym,
+) {
+  val prefix = pseudonymizeService.prefix()
+
+  MtbGraphWalker.DEFAULT.walk(
+      this,
+      patientPseudonym.value,
+      { anonymizedId(prefix, it) },
+      parallelThreshold = pseudonymizeService.parallelThreshold(),
+  )
+
+  this.pseudonymizeResearchConsents(patientPseudonym.value)
+}
+
 fun Mtb.ensureMetaDataIsInitialized() {
   // init metadata if necessary
   if (this.metadata == null) {
@@ -0,0 +1,219 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.resilience
+
+import org.slf4j.LoggerFactory
+import org.springframework.retry.RetryCallback
+import org.springframework.retry.RetryContext
+import org.springframework.retry.RetryPolicy
+import org.springframework.web.client.HttpClientErrorException
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Circuit breaker and bulkhead for calls to one remote system.
+ *
+ * After a number of consecutive failed attempts the circuit opens and all calls fail fast. Once the
+ * open duration has elapsed, a single trial call is permitted (half open). The circuit closes again
+ * if the trial call succeeds. Independent of the circuit state, the number of concurrent calls can be
+ * limited (bulkhead), exceeding calls fail fast as well. A [maxConcurrentCalls] of zero or less disables
+ * the bulkhead.
+ *
+ * Permission is checked for each attempt, so waiting for the next retry does not hold a permit.
+ * Attempts that are not permitted fail with [CallNotPermittedException].
+ *
+ * Client errors (4xx) and invalid arguments are not considered a failure of the remote system.
+ *
+ * @since 0.17.0
+ */
+class CircuitBreaker(
+    val name: String,
+    private val failureThreshold: Int,
+    private val openDuration: Duration,
+    val maxConcurrentCalls: Int,
+    private val clock: Clock = Clock.systemUTC(),
+) {
+    private val logger = LoggerFactory.getLogger(CircuitBreaker::class.java)
+
+    private val bulkhead = if (maxConcurrentCalls > 0) Semaphore(maxConcurrentCalls) else null
+    private var consecutiveFailures = 0
+    private var trialCallRunning = false
+
+    @Volatile
+    var state: State = State.CLOSED
+        private set
+
+    @Volatile
+    var lastStateChange: Instant = clock.instant()
+        private set
+
+    private val successfulCalls = AtomicLong()
+    private val failedCalls = AtomicLong()
+    private val rejectedCalls = AtomicLong()
+
+    fun successfulCalls(): Long = successfulCalls.get()
+
+    fun failedCalls(): Long = failedCalls.get()
+
+    fun rejectedCalls(): Long = rejectedCalls.get()
+
+    fun isBulkheadEnabled(): Boolean = null != bulkhead
+
+    /**
+     * Returns the number of available concurrent calls or zero if the bulkhead is disabled
+     */
+    fun availableConcurrentCalls(): Int = bulkhead?.availablePermits() ?: 0
+
+    /**
+     * Tries to get permission for a call. If permitted, the call must be finished using [release].
+     *
+     * @return false if the call must fail fast
+     */
+    fun tryAcquirePermission(): Boolean {
+        if (!tryEnterCircuit()) {
+            rejectedCalls.incrementAndGet()
+            return false
+        }
+        if (null != bulkhead && !bulkhead.tryAcquire()) {
+            synchronized(this) { trialCallRunning = false }
+            rejectedCalls.incrementAndGet()
+            return false
+        }
+        return true
+    }
+
+    /**
+     * Records a failed attempt of a permitted call
+     */
+    fun recordFailure() {
+        failedCalls.incrementAndGet()
+        synchronized(this) {
+            consecutiveFailures++
+            if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+                transitionTo(State.OPEN)
+            }
+        }
+    }
+
+    /**
+     * Finishes a permitted call
+     *
+     * @param success true if the remote system responded
+     */
+    fun release(success: Boolean) {
+        bulkhead?.release()
+        synchronized(this) {
+            trialCallRunning = false
+            if (success) {
+                consecutiveFailures = 0
+                if (state != State.CLOSED) {
+                    transitionTo(State.CLOSED)
+                }
+            }
+        }
+        if (success) {
+            successfulCalls.incrementAndGet()
+        }
+    }
+
+    /**
+     * Wraps a single attempt: permission is acquired before and released after the attempt.
+     *
+     * @throws CallNotPermittedException if the attempt must fail fast
+     */
+    fun <T, E : Throwable> guard(callback: RetryCallback<T, E>): RetryCallback<T, E> =
+        RetryCallback<T, E> { context ->
+            if (!tryAcquirePermission()) {
+                logger.warn("Call to '{}' not permitted. Circuit is {}", name, state)
+                throw CallNotPermittedException(name, state)
+            }
+            var success = false
+            try {
+                callback.doWithRetry(context).also { success = true }
+            } catch (e: Throwable) {
+                if (isFailure(e)) {
+                    recordFailure()
+                } else {
+                    success = true
+                }
+                throw e
+            } finally {
+                release(success)
+            }
+        }
+
+    /**
+     * Retry policy that stops retrying as soon as the circuit has been opened.
+     * The first attempt is always made, it fails with [CallNotPermittedException] if the circuit is open.
+     */
+    fun retryPolicy(delegate: RetryPolicy): RetryPolicy =
+        object : RetryPolicy by delegate {
+            override fun canRetry(context: RetryContext): Boolean =
+                (context.retryCount == 0 || state != State.OPEN) && delegate.canRetry(context)
+        }
+
+    @Synchronized
+    private fun tryEnterCircuit(): Boolean =
+        when (state) {
+            State.CLOSED -> {
+                true
+            }
+
+            State.OPEN -> {
+                if (clock.instant().isBefore(lastStateChange.plus(openDuration))) {
+                    false
+                } else {
+                    transitionTo(State.HALF_OPEN)
+                    trialCallRunning = true
+                    true
+                }
+            }
+
+            State.HALF_OPEN -> {
+                if (trialCallRunning) {
+                    false
+                } else {
+                    trialCallRunning = true
+                    true
+                }
+            }
+        }
+
+    private fun transitionTo(newState: State) {
+        logger.info("Circuit breaker '{}' changed from {} to {}", name, state, newState)
+        state = newState
+        lastStateChange = clock.instant()
+    }
+
+    enum class State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN,
+    }
+
+    companion object {
+        private fun isFailure(throwable: Throwable): Boolean =
+            throwable !is HttpClientErrorException && throwable !is IllegalArgumentException
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.resilience
+
+import dev.dnpm.etl.processor.config.CircuitBreakerConfigProperties
+import io.micrometer.core.instrument.FunctionCounter
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.binder.MeterBinder
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Holds one [CircuitBreaker] per remote system and exports their state as metrics
+ *
+ * @since 0.17.0
+ */
+class CircuitBreakerRegistry(
+    private val configProperties: CircuitBreakerConfigProperties,
+) : MeterBinder {
+    private val circuitBreakers = ConcurrentHashMap<String, CircuitBreaker>()
+    private val meterRegistries = mutableListOf<MeterRegistry>()
+
+    /**
+     * Returns the circuit breaker for the remote system with given name, creates it if necessary
+     */
+    fun circuitBreaker(name: String): CircuitBreaker =
+        circuitBreakers.computeIfAbsent(name) {
+            val circuitBreaker =
+                CircuitBreaker(
+                    name,
+                    configProperties.failureThreshold,
+                    configProperties.openDuration,
+                    configProperties.maxConcurrentCalls,
+                )
+            synchronized(meterRegistries) {
+                meterRegistries.forEach { registry -> bind(circuitBreaker, registry) }
+            }
+            circuitBreaker
+        }
+
+    /**
+     * Returns the circuit breaker for the remote system with given name or null if circuit breakers are disabled
+     */
+    fun circuitBreakerIfEnabled(name: String): CircuitBreaker? = if (configProperties.enabled) circuitBreaker(name) else null
+
+    fun findAll(): List<CircuitBreaker> = circuitBreakers.values.sortedBy { it.name }
+
+    override fun bindTo(registry: MeterRegistry) {
+        synchronized(meterRegistries) {
+            meterRegistries.add(registry)
+            circuitBreakers.values.forEach { bind(it, registry) }
+        }
+    }
+
+    private fun bind(
+        circuitBreaker: CircuitBreaker,
+        registry: MeterRegistry,
+    ) {
+        CircuitBreaker.State.entries.forEach { state ->
+            Gauge
+                .builder("etl.circuitbreaker.state", circuitBreaker) { if (it.state == state) 1.0 else 0.0 }
+                .description("Current state of circuit breaker")
+                .tag("name", circuitBreaker.name)
+                .tag("state", state.name.lowercase())
+                .register(registry)
+        }
+
+        if (circuitBreaker.isBulkheadEnabled()) {
+            Gauge
+                .builder("etl.bulkhead.available.concurrent.calls", circuitBreaker) { it.availableConcurrentCalls().toDouble() }
+                .description("Number of available concurrent calls")
+                .tag("name", circuitBreaker.name)
+                .register(registry)
+        }
+
+        mapOf<String, (CircuitBreaker) -> Long>(
+            "successful" to { it.successfulCalls() },
+            "failed" to { it.failedCalls() },
+            "not_permitted" to { it.rejectedCalls() },
+        ).forEach { (kind, count) ->
+            FunctionCounter
+                .builder("etl.circuitbreaker.calls", circuitBreaker) { count(it).toDouble() }
+                .description("Number of calls and failed attempts")
+                .tag("name", circuitBreaker.name)
+                .tag("kind", kind)
+                .register(registry)
+        }
+    }
+}
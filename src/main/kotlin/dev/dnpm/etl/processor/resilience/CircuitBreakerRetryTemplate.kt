@@ -0,0 +1,43 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.resilience
+
+import org.springframework.retry.RecoveryCallback
+import org.springframework.retry.RetryCallback
+import org.springframework.retry.RetryState
+import org.springframework.retry.support.RetryTemplate
+
+/**
+ * Retry template that asks the [CircuitBreaker] for permission on each attempt.
+ *
+ * Permits are only held while an attempt is running and not during back off.
+ *
+ * @since 0.17.0
+ */
+class CircuitBreakerRetryTemplate(
+    private val circuitBreaker: CircuitBreaker,
+) : RetryTemplate() {
+    override fun <T, E : Throwable> doExecute(
+        retryCallback: RetryCallback<T, E>,
+        recoveryCallback: RecoveryCallback<T>?,
+        state: RetryState?,
+    ): T = super.doExecute(circuitBreaker.guard(retryCallback), recoveryCallback, state)
+}
@@ -0,0 +1,117 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.FutureTask
+import java.util.concurrent.LinkedBlockingQueue
+
+/**
+ * Runs independent lookups on remote services (gPAS, gICS) concurrently.
+ *
+ * Lookups are forked within a scope. Leaving the scope cancels and interrupts all lookups
+ * that have not been completed, so no lookup outlives the processing of its MTB file.
+ *
+ * Scopes may be nested, e.g. a forked consent check forking its own consent lookups. Therefore,
+ * the executor must not be bounded, a virtual thread per task executor is recommended.
+ *
+ * @since 0.17.0
+ */
+class ConcurrentLookups(
+    private val executor: Executor,
+) : AutoCloseable {
+    /**
+     * Runs the given block within a new scope
+     */
+    fun <R> scope(block: Scope.() -> R): R = Scope().use { it.block() }
+
+    override fun close() {
+        (executor as? ExecutorService)?.shutdownNow()
+    }
+
+    inner class Scope : AutoCloseable {
+        private val lookups = mutableListOf<Lookup<*>>()
+        private val completed = LinkedBlockingQueue<Lookup<*>>()
+        private var joined = 0
+
+        /**
+         * Starts the given lookup
+         */
+        fun <T> fork(lookup: () -> T): Lookup<T> {
+            val forked = Lookup(lookup, completed)
+            lookups.add(forked)
+            executor.execute(forked)
+            return forked
+        }
+
+        /**
+         * Waits for all forked lookups. If any lookup fails, all remaining lookups will be cancelled
+         * and the cause of the first failure is thrown.
+         */
+        fun joinAll() {
+            try {
+                while (joined < lookups.size) {
+                    completed.take().throwOnFailure()
+                    joined++
+                }
+            } catch (e: Throwable) {
+                close()
+                throw e
+            }
+        }
+
+        override fun close() {
+            lookups.forEach { it.cancel(true) }
+        }
+    }
+
+    class Lookup<T> internal constructor(
+        lookup: () -> T,
+        private val completed: LinkedBlockingQueue<Lookup<*>>,
+    ) : FutureTask<T>(Callable { lookup() }) {
+        override fun done() {
+            completed.add(this)
+        }
+
+        internal fun throwOnFailure() {
+            result()
+        }
+
+        /**
+         * Returns the result of the completed lookup or throws the cause of its failure
+         */
+        fun result(): T =
+            try {
+                get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+    }
+
+    companion object {
+        /** Runs all lookups on the calling thread, one after another */
+        @JvmStatic
+        val SAME_THREAD = ConcurrentLookups(Runnable::run)
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties
+import dev.dnpm.etl.processor.PatientId
+import dev.dnpm.etl.processor.config.ConsentNotificationConfigProperties
+import dev.dnpm.etl.processor.consent.ConsentCache
+import dev.dnpm.etl.processor.pseudonym.PseudonymCache
+import org.slf4j.LoggerFactory
+
+/**
+ * Handles consent change notifications sent by gICS.
+ *
+ * Cached consent lookups and pseudonyms of all affected patients are removed, so the next request
+ * uses the current consent. Patients registered for consent re-evaluation are checked immediately.
+ *
+ * Consent cache entries are removed on this instance only, other instances rely on the time to live.
+ *
+ * @since 0.17.0
+ */
+class ConsentNotificationProcessor(
+    private val personIdentifierSystem: String,
+    private val configProperties: ConsentNotificationConfigProperties,
+    private val consentCache: ConsentCache?,
+    private val pseudonymCache: PseudonymCache?,
+    private val consentRecheckService: ConsentRecheckService?,
+) {
+    private val logger = LoggerFactory.getLogger(ConsentNotificationProcessor::class.java)
+
+    /**
+     * Processes the notification
+     *
+     * @return patient IDs affected by this notification
+     */
+    fun process(notification: GicsConsentNotification): List<PatientId> {
+        val patientIds = patientIds(notification)
+        if (patientIds.isEmpty()) {
+            logger.warn("Consent notification '{}' without patient identifier of type '{}'", notification.type, personIdentifierSystem)
+            return patientIds
+        }
+
+        patientIds.forEach { patientId ->
+            val invalidatedEntries = consentCache?.invalidate(patientId.value) ?: 0
+            val invalidatedPseudonym =
+                try {
+                    pseudonymCache?.invalidate(patientId) ?: false
+                } catch (e: RuntimeException) {
+                    logger.warn("Cannot remove pseudonym cache entry", e)
+                    false
+                }
+            val recheck = configProperties.reexport && consentRecheckService?.recheck(patientId) ?: false
+            logger.debug(
+                "Consent notification '{}' processed: {} consent cache entries removed, pseudonym removed: {}, re-evaluation: {}",
+                notification.type,
+                invalidatedEntries,
+                invalidatedPseudonym,
+                recheck,
+            )
+        }
+
+        return patientIds
+    }
+
+    private fun patientIds(notification: GicsConsentNotification): List<PatientId> =
+        notification.consentKey
+            ?.signerIds
+            .orEmpty()
+            .filter { isPersonIdentifier(it.idType) && !it.id.isNullOrBlank() }
+            .map { PatientId(it.id!!.trim()) }
+            .distinct()
+
+    // gICS uses the name of the ID type, FHIR identifiers use it as last path segment of the system
+    private fun isPersonIdentifier(idType: String?): Boolean =
+        !idType.isNullOrBlank() && (idType == personIdentifierSystem || personIdentifierSystem.endsWith("/$idType"))
+}
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+data class GicsConsentNotification(
+    val type: String? = null,
+    val consentKey: GicsConsentKey? = null,
+)
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+data class GicsConsentKey(
+    val signerIds: List<GicsSignerId> = listOf(),
+)
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+data class GicsSignerId(
+    val idType: String? = null,
+    val id: String? = null,
+)
@@ -21,9 +21,10 @@
 package dev.dnpm.etl.processor.services
 
 import ca.uhn.fhir.context.FhirContext
-import com.fasterxml.jackson.core.JsonProcessingException
 import dev.dnpm.etl.processor.config.AppConfigProperties
+import dev.dnpm.etl.processor.config.FhirJsonTreeWriter
 import dev.dnpm.etl.processor.config.GIcsConfigProperties
+import dev.dnpm.etl.processor.consent.CachingConsentService
 import dev.dnpm.etl.processor.consent.ConsentDomain
 import dev.dnpm.etl.processor.consent.IConsentService
 import dev.dnpm.etl.processor.consent.MtbFileConsentService
@@ -50,6 +51,7 @@ class ConsentProcessor(
     private val jsonMapper: JsonMapper,
     private val fhirContext: FhirContext,
     private val consentService: IConsentService,
+    private val concurrentLookups: ConcurrentLookups = ConcurrentLookups.SAME_THREAD,
 ) {
   private var logger: Logger = LoggerFactory.getLogger("ConsentProcessor")
 
@@ -65,12 +67,23 @@ class ConsentProcessor(
    * @param mtbFile File v2 (will be enriched with consent data)
    * @return true if consent is given
    */
-  fun consentGatedCheckAndTryEmbedding(mtbFile: Mtb): Boolean {
+  fun consentGatedCheckAndTryEmbedding(mtbFile: Mtb): Boolean =
+      checkAndTryEmbedding(mtbFile).consentGiven
+
+  /**
+   * Same as [consentGatedCheckAndTryEmbedding] but also reports whether the last known consent
+   * has been used, since the consent service was not available.
+   *
+   * @param mtbFile File v2 (will be enriched with consent data)
+   * @return result of consent check
+   * @since 0.17.0
+   */
+  fun checkAndTryEmbedding(mtbFile: Mtb): ConsentCheckResult {
     mtbFile.ensureMetaDataIsInitialized()
 
     if (consentService is MtbFileConsentService) {
       // consent check is disabled
-      return true
+      return ConsentCheckResult(true)
     }
 
     val personIdentifierValue = mtbFile.patient.id
@@ -83,15 +96,42 @@ class ConsentProcessor(
     // 2.1 -> yes -> send mtb file
     // 2.2 -> no ->  warn/info no consent given
 
-    // GenomDE_MV-Consent only if domain name available else fallback to file check
-    val genomDeSequencingStatus = if (null != gIcsConfigProperties.genomDeConsentDomainName) {
-        val genomeDeConsent =
-            consentService.getConsent(
-                personIdentifierValue,
-                requestDate,
-                ConsentDomain.MODELLVORHABEN_64E,
-            )
+    // Both consent domains are requested concurrently, broad consent is not required
+    // if there is a reason for missing broad consent
+    val (genomeDeConsent, broadConsent) =
+        concurrentLookups.scope {
+          // GenomDE_MV-Consent only if domain name available else fallback to file check
+          val genomeDeConsentLookup =
+              if (null != gIcsConfigProperties.genomDeConsentDomainName) {
+                fork {
+                  consentService.getConsent(
+                      personIdentifierValue,
+                      requestDate,
+                      ConsentDomain.MODELLVORHABEN_64E,
+                  )
+                }
+              } else {
+                null
+              }
+          val broadConsentLookup =
+              if (null == mtbFile.metadata?.reasonResearchConsentMissing) {
+                fork {
+                  consentService.getConsent(
+                      personIdentifierValue,
+                      requestDate,
+                      ConsentDomain.BROAD_CONSENT,
+                  )
+                }
+              } else {
+                null
+              }
+          joinAll()
+          Pair(genomeDeConsentLookup?.result(), broadConsentLookup?.result())
+        }
+
+    val stale = listOfNotNull(genomeDeConsent, broadConsent).any { CachingConsentService.isStale(it) }
 
+    val genomDeSequencingStatus = if (null != genomeDeConsent) {
         addGenomeDbProvisions(mtbFile, genomeDeConsent)
 
         if (genomeDeConsent.entry.isNotEmpty()) setGenomDeSubmissionType(mtbFile)
@@ -104,17 +144,15 @@ class ConsentProcessor(
     /*
      * broad consent
      */
-    if (null != mtbFile.metadata?.reasonResearchConsentMissing) {
+    if (null == broadConsent) {
         // early return if there is a reason for missing broad consent
-        return false
+        return ConsentCheckResult(false, stale)
     }
 
-    val broadConsent =
-          consentService.getConsent(personIdentifierValue, requestDate, ConsentDomain.BROAD_CONSENT)
     val broadConsentHasBeenAsked = broadConsent.entry.isNotEmpty()
 
     // fast exit - if patient has not been asked, we can skip and exit
-    if (!broadConsentHasBeenAsked) return false
+    if (!broadConsentHasBeenAsked) return ConsentCheckResult(false, stale)
 
     embedBroadConsentResources(mtbFile, broadConsent)
 
@@ -123,34 +161,26 @@ class ConsentProcessor(
 
     if (Consent.ConsentProvisionType.NULL == broadConsentStatus) {
       // bc not asked
-      return false
+      return ConsentCheckResult(false, stale)
     }
     if (
         Consent.ConsentProvisionType.PERMIT == broadConsentStatus ||
             Consent.ConsentProvisionType.PERMIT == genomDeSequencingStatus
     )
-        return true
+        return ConsentCheckResult(true, stale)
 
-    return false
+    return ConsentCheckResult(false, stale)
   }
 
   fun embedBroadConsentResources(mtbFile: Mtb, broadConsent: Bundle) {
     for (entry in broadConsent.entry) {
       val resource = entry.resource
       if (resource is Consent) {
-        // since jackson convertValue does not work here,
-        // we need another step to back to string, before we convert to object map
-        val asJsonString = fhirContext.newJsonParser().encodeResourceToString(resource)
-        try {
-          val mapOfJson: MvhMetadata.ResearchConsent? =
-              jsonMapper.readValue(
-                  asJsonString,
-                  MvhMetadata.ResearchConsent::class.java,
-              )
-          mtbFile.metadata.researchConsents.add(mapOfJson)
-        } catch (e: JsonProcessingException) {
-          throw RuntimeException(e)
-        }
+        // Encode consent directly into a JSON tree to avoid encoding and parsing a JSON string
+        val consentTree = FhirJsonTreeWriter.toJsonTree(fhirContext, resource)
+        val researchConsent: MvhMetadata.ResearchConsent? =
+            jsonMapper.treeToValue(consentTree, MvhMetadata.ResearchConsent::class.java)
+        mtbFile.metadata.researchConsents.add(researchConsent)
       }
     }
   }
@@ -326,3 +356,13 @@ class ConsentProcessor(
     return isRequestDateAfterOrEqualStart <= 0 && isRequestDateBeforeOrEqualEnd >= 0
   }
 }
+
+/**
+ * Result of consent check
+ *
+ * @param consentGiven true if consent is given
+ * @param stale true if the last known consent has been used since the consent service was not
+ *   available
+ * @since 0.17.0
+ */
+data class ConsentCheckResult(val consentGiven: Boolean, val stale: Boolean = false)
@@ -0,0 +1,368 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import dev.dnpm.etl.processor.PatientId
+import dev.dnpm.etl.processor.PatientPseudonym
+import dev.dnpm.etl.processor.RequestId
+import dev.dnpm.etl.processor.config.ConsentRecheckConfigProperties
+import dev.dnpm.etl.processor.consent.TtpConsentStatus
+import dev.dnpm.etl.processor.monitoring.RequestRepository
+import dev.pcvolkmer.mv64e.mtb.Mtb
+import dev.pcvolkmer.mv64e.mtb.MvhMetadata
+import dev.pcvolkmer.mv64e.mtb.Patient
+import org.apache.kafka.clients.producer.ProducerRecord
+import org.slf4j.LoggerFactory
+import org.springframework.data.annotation.Id
+import org.springframework.data.relational.core.mapping.Table
+import org.springframework.data.repository.CrudRepository
+import org.springframework.kafka.core.KafkaTemplate
+import org.springframework.scheduling.annotation.Scheduled
+import tools.jackson.databind.json.JsonMapper
+import java.security.GeneralSecurityException
+import java.time.Clock
+import java.time.Instant
+import java.util.concurrent.Executors
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.Semaphore
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
+
+/**
+ * Scheduled re-evaluation of consent for patients whose data was processed without consent.
+ *
+ * gICS can only be queried using the patient ID, which is never stored with a request. Patient IDs
+ * are therefore kept encrypted in a separate table until consent has been given or a newer request
+ * for the patient has been processed. Only patients whose consent status changed to given result in
+ * a re-export request, which is sent to the configured Kafka topic or listed on the configs page.
+ * Re-export requests contain the patient pseudonym only.
+ *
+ * Consent is decided by [ConsentProcessor] as for processed MTB files. Scheduled runs are executed
+ * on a separate thread to not block other scheduled tasks while throttled. A patient is never checked
+ * by a scheduled run and a consent notification at the same time.
+ *
+ * @since 0.17.0
+ */
+class ConsentRecheckService(
+    private val repository: ConsentRecheckRepository,
+    private val requestRepository: RequestRepository,
+    private val consentProcessor: ConsentProcessor,
+    private val configProperties: ConsentRecheckConfigProperties,
+    private val jsonMapper: JsonMapper,
+    private val kafkaTemplate: KafkaTemplate<String, ByteArray>? = null,
+    private val clock: Clock = Clock.systemUTC(),
+) : AutoCloseable {
+    private val logger = LoggerFactory.getLogger(ConsentRecheckService::class.java)
+
+    private val running = AtomicBoolean(false)
+
+    private val executor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("consent-recheck").daemon().factory())
+
+    // Re-evaluation caused by consent notifications, bounded to not flood gICS
+    private val notificationExecutor =
+        ThreadPoolExecutor(
+            configProperties.maxConcurrency.coerceAtLeast(1),
+            configProperties.maxConcurrency.coerceAtLeast(1),
+            1,
+            TimeUnit.MINUTES,
+            LinkedBlockingQueue(NOTIFICATION_QUEUE_CAPACITY),
+            Thread.ofVirtual().name("consent-recheck-notification-", 0).factory(),
+        ).apply { allowCoreThreadTimeOut(true) }
+
+    private val patientIdCipher = PatientIdCipher(configProperties.secret)
+
+    // Pseudonyms of patients currently checked, guarded by checkingLock
+    private val checking = mutableSetOf<String>()
+    private val checkingLock = ReentrantLock()
+    private val checkingFinished = checkingLock.newCondition()
+
+    @Volatile
+    var lastRun: RecheckRun? = null
+        private set
+
+    /**
+     * Registers a patient for consent re-evaluation
+     */
+    fun register(
+        patientId: PatientId,
+        patientPseudonym: PatientPseudonym,
+        requestId: RequestId,
+        consentStatus: TtpConsentStatus,
+    ) {
+        try {
+            val patientIdHash = patientIdCipher.hash(patientId)
+            val encryptedPatientId = patientIdCipher.encrypt(patientId)
+            val entry =
+                repository.findByPatientPseudonym(patientPseudonym.value)?.copy(
+                    patientIdHash = patientIdHash,
+                    encryptedPatientId = encryptedPatientId,
+                    requestUuid = requestId.value,
+                    consentStatus = consentStatus,
+                    consentGivenAt = null,
+                ) ?: ConsentRecheckEntry(
+                    patientPseudonym = patientPseudonym.value,
+                    patientIdHash = patientIdHash,
+                    encryptedPatientId = encryptedPatientId,
+                    requestUuid = requestId.value,
+                    consentStatus = consentStatus,
+                    createdAt = clock.instant(),
+                )
+            repository.save(entry)
+        } catch (e: RuntimeException) {
+            logger.warn("Cannot register patient for consent re-evaluation", e)
+        }
+    }
+
+    /**
+     * Re-evaluates consent of given patient in background if registered for consent re-evaluation.
+     * If too many re-evaluations are pending, the patient is left to the next scheduled run.
+     *
+     * @return true if the patient is registered and re-evaluation has been started
+     */
+    fun recheck(patientId: PatientId): Boolean {
+        val entries = repository.findAllByPatientIdHash(patientIdCipher.hash(patientId))
+        if (entries.isEmpty()) {
+            return false
+        }
+        try {
+            notificationExecutor.execute {
+                try {
+                    entries.forEach { check(it) }
+                } catch (e: RuntimeException) {
+                    logger.warn("Cannot re-evaluate consent", e)
+                }
+            }
+        } catch (e: RejectedExecutionException) {
+            logger.warn("Too many pending consent re-evaluations - left to next scheduled run")
+            return false
+        }
+        return true
+    }
+
+    /**
+     * Returns patients with changed consent not yet sent as re-export request
+     */
+    fun pendingReexports(): List<ConsentRecheckEntry> = repository.findAllByConsentGivenAtIsNotNullOrderByConsentGivenAt()
+
+    /**
+     * Starts re-evaluation of consent on a separate thread
+     */
+    @Scheduled(cron = "\${app.consent.recheck.cron:0 0 2 * * *}")
+    fun scheduleRecheck() {
+        executor.execute {
+            try {
+                recheck()
+            } catch (e: RuntimeException) {
+                logger.error("Consent re-evaluation failed", e)
+            }
+        }
+    }
+
+    /**
+     * Re-evaluates consent of all registered patients whose latest request is still affected by
+     * missing consent. Entries of patients with a newer request are removed.
+     */
+    fun recheck() {
+        if (!running.compareAndSet(false, true)) {
+            logger.info("Consent re-evaluation still running - skipping")
+            return
+        }
+        try {
+            val startedAt = clock.instant()
+            val pending = requestRepository.findPatientPseudonymsForConsentRecheck().toSet()
+            val (candidates, superseded) = repository.findAll().partition { pending.contains(it.patientPseudonym) }
+            if (superseded.isNotEmpty()) {
+                repository.deleteAll(superseded)
+            }
+
+            val unchecked = candidates.filter { null == it.consentGivenAt }
+            val changed = checkAll(unchecked)
+
+            lastRun = RecheckRun(startedAt, unchecked.size, changed)
+            logger.info("Consent re-evaluation checked {} patients - {} with changed consent", unchecked.size, changed)
+        } finally {
+            running.set(false)
+        }
+    }
+
+    private fun checkAll(entries: List<ConsentRecheckEntry>): Int {
+        val permits = Semaphore(configProperties.maxConcurrency.coerceAtLeast(1))
+        val changed = AtomicInteger()
+        Executors.newVirtualThreadPerTaskExecutor().use { executor ->
+            entries.forEach { entry ->
+                permits.acquire()
+                executor.execute {
+                    try {
+                        if (check(entry)) {
+                            changed.incrementAndGet()
+                        }
+                    } finally {
+                        permits.release()
+                    }
+                }
+                // Throttle lookups to not disturb regular processing
+                if (configProperties.delay.isPositive) {
+                    Thread.sleep(configProperties.delay)
+                }
+            }
+        }
+        return changed.get()
+    }
+
+    /**
+     * Checks the patient of given entry after a running check of the same patient has finished.
+     * The entry is read again, as it might have been changed or removed by the other check.
+     */
+    private fun check(entry: ConsentRecheckEntry): Boolean {
+        checkingLock.withLock {
+            while (!checking.add(entry.patientPseudonym)) {
+                checkingFinished.await()
+            }
+        }
+        try {
+            return checkCurrent(repository.findByPatientPseudonym(entry.patientPseudonym) ?: return false)
+        } finally {
+            checkingLock.withLock {
+                checking.remove(entry.patientPseudonym)
+                checkingFinished.signalAll()
+            }
+        }
+    }
+
+    private fun checkCurrent(entry: ConsentRecheckEntry): Boolean {
+        val consentStatus =
+            try {
+                consentStatus(patientIdCipher.decrypt(entry.encryptedPatientId))
+            } catch (e: GeneralSecurityException) {
+                logger.warn("Cannot decrypt patient ID - secret might have been changed")
+                return false
+            } catch (e: RuntimeException) {
+                logger.warn("Cannot re-evaluate consent", e)
+                return false
+            }
+
+        if (consentStatus == TtpConsentStatus.FAILED_TO_ASK) {
+            return false
+        }
+
+        val now = clock.instant()
+        if (consentStatus == entry.consentStatus || consentStatus != TtpConsentStatus.BROAD_CONSENT_GIVEN) {
+            repository.save(entry.copy(consentStatus = consentStatus, checkedAt = now))
+            return false
+        }
+
+        if (publish(entry, consentStatus)) {
+            repository.delete(entry)
+        } else {
+            repository.save(entry.copy(consentStatus = consentStatus, checkedAt = now, consentGivenAt = now))
+        }
+        return true
+    }
+
+    /**
+     * Uses the same decision as for processed MTB files, the last known consent used if gICS is not
+     * available is not taken into account
+     */
+    private fun consentStatus(patientId: PatientId): TtpConsentStatus {
+        val mtbFile =
+            Mtb.builder()
+                .patient(Patient.builder().id(patientId.value).build())
+                .metadata(MvhMetadata())
+                .build()
+        val result = consentProcessor.checkAndTryEmbedding(mtbFile)
+        return when {
+            result.stale -> TtpConsentStatus.FAILED_TO_ASK
+            result.consentGiven -> TtpConsentStatus.BROAD_CONSENT_GIVEN
+            else -> TtpConsentStatus.BROAD_CONSENT_MISSING_OR_REJECTED
+        }
+    }
+
+    override fun close() {
+        executor.shutdownNow()
+        notificationExecutor.shutdownNow()
+    }
+
+    private fun publish(
+        entry: ConsentRecheckEntry,
+        consentStatus: TtpConsentStatus,
+    ): Boolean {
+        val topic = configProperties.topic
+        if (null == kafkaTemplate || topic.isNullOrBlank()) {
+            return false
+        }
+        return try {
+            val record =
+                ProducerRecord(
+                    topic,
+                    jsonMapper.writeValueAsString(mapOf("pid" to entry.patientPseudonym)),
+                    jsonMapper.writeValueAsBytes(
+                        mapOf(
+                            "patientPseudonym" to entry.patientPseudonym,
+                            "consentStatus" to consentStatus.name,
+                            "requestId" to entry.requestUuid,
+                        ),
+                    ),
+                )
+            record.headers().add("requestMethod", "REEXPORT".toByteArray())
+            kafkaTemplate.send(record).get()
+            true
+        } catch (e: Exception) {
+            logger.error("Cannot send re-export request", e)
+            false
+        }
+    }
+
+    companion object {
+        private const val NOTIFICATION_QUEUE_CAPACITY = 1000
+    }
+}
+
+data class RecheckRun(
+    val startedAt: Instant,
+    val checked: Int,
+    val changed: Int,
+)
+
+@Table("consent_recheck")
+data class ConsentRecheckEntry(
+    @Id val id: Long? = null,
+    val patientPseudonym: String,
+    val patientIdHash: String,
+    val encryptedPatientId: String,
+    val requestUuid: String,
+    val consentStatus: TtpConsentStatus,
+    val createdAt: Instant = Instant.now(),
+    val checkedAt: Instant? = null,
+    val consentGivenAt: Instant? = null,
+)
+
+interface ConsentRecheckRepository : CrudRepository<ConsentRecheckEntry, Long> {
+    fun findByPatientPseudonym(patientPseudonym: String): ConsentRecheckEntry?
+
+    fun findAllByPatientIdHash(patientIdHash: String): List<ConsentRecheckEntry>
+
+    fun findAllByConsentGivenAtIsNotNullOrderByConsentGivenAt(): List<ConsentRecheckEntry>
+}
@@ -0,0 +1,80 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2025-2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dev.dnpm.etl.processor.services
+
+import dev.dnpm.etl.processor.PatientId
+import org.apache.commons.codec.digest.HmacAlgorithms
+import org.apache.commons.codec.digest.HmacUtils
+import java.security.SecureRandom
+import java.util.Base64
+import javax.crypto.Cipher
+import javax.crypto.spec.GCMParameterSpec
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Encrypts patient IDs which must be kept to query consent later on.
+ *
+ * Patient IDs are encrypted using AES-GCM with a random IV and looked up by HMAC of the patient ID.
+ * Both keys are derived from the configured secret, stored patient IDs cannot be decrypted if the
+ * secret is changed.
+ *
+ * @since 0.17.0
+ */
+class PatientIdCipher(
+    secret: String?,
+) {
+    private val hmacKey =
+        secret?.takeIf { it.isNotBlank() }?.toByteArray()
+            ?: throw IllegalArgumentException("No secret to encrypt patient IDs configured")
+
+    private val encryptionKey =
+        SecretKeySpec(HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacKey).hmac(ENCRYPTION_KEY_INFO), "AES")
+
+    private val secureRandom = SecureRandom()
+
+    // HmacUtils is not thread safe, so use a new instance for each hash
+    fun hash(patientId: PatientId): String = HmacUtils(HmacAlgorithms.HMAC_SHA_256, hmacKey).hmacHex(patientId.value)
+
+    fun encrypt(patientId: PatientId): String {
+        val iv = ByteArray(IV_LENGTH).also { secureRandom.nextBytes(it) }
+        val cipher = Cipher.getInstance(TRANSFORMATION)
+        cipher.init(Cipher.ENCRYPT_MODE, encryptionKey, GCMParameterSpec(TAG_LENGTH, iv))
+        return Base64.getEncoder().encodeToString(iv + cipher.doFinal(patientId.value.toByteArray()))
+    }
+
+    /**
+     * @throws java.security.GeneralSecurityException if the value cannot be decrypted using the configured secret
+     */
+    fun decrypt(encryptedPatientId: String): PatientId {
+        val bytes = Base64.getDecoder().decode(encryptedPatientId)
+        val cipher = Cipher.getInstance(TRANSFORMATION)
+        cipher.init(Cipher.DECRYPT_MODE, encryptionKey, GCMParameterSpec(TAG_LENGTH, bytes, 0, IV_LENGTH))
+        return PatientId(String(cipher.doFinal(bytes, IV_LENGTH, bytes.size - IV_LENGTH)))
+    }
+
+    companion object {
+        private const val TRANSFORMATION = "AES/GCM/NoPadding"
+        private const val IV_LENGTH = 12
+        private const val TAG_LENGTH = 128
+        private const val ENCRYPTION_KEY_INFO = "patient-id-encryption"
+    }
+}
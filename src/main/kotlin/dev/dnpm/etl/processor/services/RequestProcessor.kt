@@ -28,10 +28,10 @@ import dev.dnpm.etl.processor.output.DeleteRequest
 import dev.dnpm.etl.processor.output.DnpmV2MtbFileRequest
 import dev.dnpm.etl.processor.output.MtbFileRequest
 import dev.dnpm.etl.processor.output.MtbFileSender
+import dev.dnpm.etl.processor.output.MtbPayload
 import dev.dnpm.etl.processor.pseudonym.PseudonymizeService
-import dev.dnpm.etl.processor.pseudonym.addGenomDeTan
-import dev.dnpm.etl.processor.pseudonym.anonymizeContentWith
-import dev.dnpm.etl.processor.pseudonym.pseudonymizeWith
+import dev.dnpm.etl.processor.pseudonym.pseudonymizeAndAnonymizeWith
+import dev.dnpm.etl.processor.resilience.CallNotPermittedException
 import dev.pcvolkmer.mv64e.mtb.Mtb
 import dev.pcvolkmer.mv64e.mtb.MvhSubmissionType
 import org.apache.commons.codec.binary.Base32
@@ -54,6 +54,8 @@ class RequestProcessor(
     private val applicationEventPublisher: ApplicationEventPublisher,
     private val appConfigProperties: AppConfigProperties,
     private val consentProcessor: ConsentProcessor?,
+    private val concurrentLookups: ConcurrentLookups = ConcurrentLookups.SAME_THREAD,
+    private val consentRecheckService: ConsentRecheckService? = null,
 ) {
 
     private var logger: Logger = LoggerFactory.getLogger("RequestProcessor")
@@ -63,42 +65,88 @@ class RequestProcessor(
     }
 
     fun processMtbFile(mtbFile: Mtb, requestId: RequestId): Boolean {
-        val isConsentOk =
-            consentProcessor != null && consentProcessor.consentGatedCheckAndTryEmbedding(mtbFile) ||
-                    consentProcessor == null
+        return concurrentLookups.scope {
+            // Pseudonym and TAN are requested while consent is checked, failures are handled on join.
+            // TAN requires metadata, which might be initialized by consent processor
+            val patientPseudonymLookup = fork { pseudonymizeService.patientPseudonym(PatientId(mtbFile.patient.id)) }
+            val genomDeTanLookup =
+                if (null != mtbFile.metadata || null != consentProcessor) {
+                    fork { pseudonymizeService.genomDeTan(PatientId(mtbFile.patient.id)) }
+                } else {
+                    null
+                }
 
-        if (!isConsentOk) {
-            logger.warn("consent check failed but will be sent to DNPM:DIP!")
-        }
+            val consentCheck = consentProcessor?.checkAndTryEmbedding(mtbFile) ?: ConsentCheckResult(true)
 
-        try {
-            mtbFile addGenomDeTan pseudonymizeService
-            mtbFile pseudonymizeWith pseudonymizeService
-            mtbFile anonymizeContentWith pseudonymizeService
-            val request = DnpmV2MtbFileRequest(requestId, transformationService.transform(mtbFile))
-            saveAndSend(request)
-        } catch (e: Exception) {
-            logger.error("Error while processing MtbFile", e)
-            requestService.save(
-                Request(
-                    null,
-                    requestId,
-                    PatientPseudonym("INVALID"),
-                    emptyPatientId(),
-                    fingerprint(""),
-                    RequestType.MTB_FILE,
-                    SubmissionType.UNKNOWN,
-                    RequestStatus.ERROR,
-                    Tan.empty(),
-                    report = Report("Fehlerhafte Eingangsdaten. Keine Verarbeitung oder Weiterleitung."),
+            if (!consentCheck.consentGiven) {
+                logger.warn("consent check failed but will be sent to DNPM:DIP!")
+            }
+            if (consentCheck.stale) {
+                logger.warn("consent service not available - last known consent is used")
+            }
+
+            try {
+                joinAll()
+                // Patient ID is replaced by pseudonym while processing
+                val patientId = PatientId(mtbFile.patient.id)
+                genomDeTanLookup?.let { lookup -> mtbFile.metadata?.transferTan = lookup.result() }
+                // Rules are used for the whole request, even if other rules are activated meanwhile
+                val transformationRules = transformationService.currentRules()
+                val request =
+                    DnpmV2MtbFileRequest(
+                        requestId,
+                        pseudonymizeAndTransform(mtbFile, patientPseudonymLookup.result(), transformationRules),
+                    )
+                saveAndSend(request, consentCheck.stale, transformationRules?.version)
+                if (!consentCheck.consentGiven) {
+                    consentRecheckService?.register(
+                        patientId,
+                        request.patientPseudonym(),
+                        requestId,
+                        TtpConsentStatus.BROAD_CONSENT_MISSING_OR_REJECTED,
+                    )
+                }
+            } catch (e: Exception) {
+                logger.error("Error while processing MtbFile", e)
+                requestService.save(
+                    Request(
+                        null,
+                        requestId,
+                        PatientPseudonym("INVALID"),
+                        emptyPatientId(),
+                        fingerprint(""),
+                        RequestType.MTB_FILE,
+                        SubmissionType.UNKNOWN,
+                        RequestStatus.ERROR,
+                        Tan.empty(),
+                        report =
+                            if (isNotPermitted(e)) {
+                                Report("Zielsystem derzeit nicht verfügbar. Keine Verarbeitung oder Weiterleitung.")
+                            } else {
+                                Report("Fehlerhafte Eingangsdaten. Keine Verarbeitung oder Weiterleitung.")
+                            },
+                    )
                 )
-            )
-            return false
+                return@scope false
+            }
+            true
         }
-        return true
     }
 
-    private fun <T> saveAndSend(request: MtbFileRequest<T>) {
+    private fun pseudonymizeAndTransform(
+        mtbFile: Mtb,
+        patientPseudonym: PatientPseudonym,
+        transformationRules: TransformationRules?,
+    ): Mtb {
+        mtbFile.pseudonymizeAndAnonymizeWith(pseudonymizeService, patientPseudonym)
+        return transformationService.transform(mtbFile, transformationRules)
+    }
+
+    private fun <T> saveAndSend(
+        request: MtbFileRequest<T>,
+        consentStale: Boolean,
+        transformationVersion: String?,
+    ) {
         var submissionType: SubmissionType =
             when (request) {
                 is DnpmV2MtbFileRequest -> {
@@ -134,6 +182,8 @@ class RequestProcessor(
                     tan = Tan(request.content.metadata?.transferTan.orEmpty()),
                     followupCount = maxFollowUpCount,
                     expectedFollowupCount = request.content.followUps?.size ?: 0,
+                    consentStale = consentStale,
+                    transformationVersion = transformationVersion,
                 )
             )
             // Exit - no further processing
@@ -161,29 +211,35 @@ class RequestProcessor(
             }
         }
 
+        // Content is serialized once for fingerprint, duplication detection and sending and must not be changed afterwards
+        val serializedRequest = request.withPayload(jsonMapper)
+        val fingerprint = fingerprint(serializedRequest)
+
         requestService.save(
             Request(
                 uuid = request.requestId,
                 patientPseudonym = request.patientPseudonym(),
                 pid = emptyPatientId(),
-                fingerprint = fingerprint(request),
+                fingerprint = fingerprint,
                 type = RequestType.MTB_FILE,
                 submissionType = submissionType,
                 status = RequestStatus.UNKNOWN,
                 tan = Tan(request.content.metadata?.transferTan.orEmpty()),
                 followupCount = maxFollowUpCount,
                 expectedFollowupCount = request.content.followUps?.size ?: 0,
+                consentStale = consentStale,
+                transformationVersion = transformationVersion,
             )
         )
 
-        if (appConfigProperties.duplicationDetection && isDuplication(request)) {
+        if (appConfigProperties.duplicationDetection && isDuplication(request, fingerprint)) {
             applicationEventPublisher.publishEvent(
                 ResponseEvent(request.requestId, Instant.now(), RequestStatus.DUPLICATION)
             )
             return
         }
 
-        val responseStatus = sender.send(request)
+        val responseStatus = sender.send(serializedRequest)
 
         applicationEventPublisher.publishEvent(
             ResponseEvent(
@@ -236,7 +292,10 @@ class RequestProcessor(
         }
     }
 
-    private fun <T> isDuplication(pseudonymizedMtbFileRequest: MtbFileRequest<T>): Boolean {
+    private fun <T> isDuplication(
+        pseudonymizedMtbFileRequest: MtbFileRequest<T>,
+        fingerprint: Fingerprint,
+    ): Boolean {
         val patientPseudonym =
             when (pseudonymizedMtbFileRequest) {
                 is DnpmV2MtbFileRequest ->
@@ -250,7 +309,7 @@ class RequestProcessor(
 
         return null != lastMtbFileRequestForPatient &&
                 !isLastRequestDeletion &&
-                lastMtbFileRequestForPatient.fingerprint == fingerprint(pseudonymizedMtbFileRequest)
+                lastMtbFileRequestForPatient.fingerprint == fingerprint
     }
 
     fun processDeletion(patientId: PatientId, isConsented: TtpConsentStatus) {
@@ -295,6 +354,10 @@ class RequestProcessor(
                 )
             )
 
+            if (requestStatus == RequestStatus.NO_CONSENT) {
+                consentRecheckService?.register(patientId, patientPseudonym, requestId, isConsented)
+            }
+
             val responseStatus = sender.send(DeleteRequest(requestId, patientPseudonym))
 
             applicationEventPublisher.publishEvent(
@@ -328,17 +391,24 @@ class RequestProcessor(
     }
 
     private fun <T> fingerprint(request: MtbFileRequest<T>): Fingerprint {
-        return when (request) {
-            is DnpmV2MtbFileRequest -> fingerprint(jsonMapper.writeValueAsString(request.content))
-        }
+        val payload = request.payload ?: MtbPayload.of(request.content as Any, jsonMapper)
+        return fingerprint(payload.sha256())
     }
 
     private fun fingerprint(s: String): Fingerprint {
+        return fingerprint(DigestUtils.sha256(s))
+    }
+
+    private fun fingerprint(digest: ByteArray): Fingerprint {
         return Fingerprint(
-            Base32().encodeAsString(DigestUtils.sha256(s))
+            Base32().encodeAsString(digest)
                 .replace("=", "")
                 .lowercase()
         )
     }
 
+    private fun isNotPermitted(e: Exception): Boolean {
+        return generateSequence<Throwable>(e) { it.cause }.any { it is CallNotPermittedException }
+    }
+
 }
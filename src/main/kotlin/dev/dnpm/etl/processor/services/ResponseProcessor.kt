@@ -82,6 +82,13 @@ class ResponseProcessor(
                 }
               }
 
+              if (it.consentStale) {
+                it.report =
+                    it.report?.let { report ->
+                      report.copy(description = "${report.description} ($STALE_CONSENT_NOTE)")
+                    }
+              }
+
               requestService.save(it)
 
               statisticsUpdateProducer.emitNext("", Sinks.EmitFailureHandler.FAIL_FAST)
@@ -89,6 +96,11 @@ class ResponseProcessor(
             { logger.error("Response for unknown request '${event.requestUuid}'!") },
         )
   }
+
+  companion object {
+    const val STALE_CONSENT_NOTE =
+        "Letzter bekannter Einwilligungsstatus verwendet, Consent-Service nicht erreichbar"
+  }
 }
 
 data class ResponseEvent(
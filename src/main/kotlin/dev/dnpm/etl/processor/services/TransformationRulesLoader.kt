@@ -0,0 +1,117 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import dev.dnpm.etl.processor.config.MappingTableProperties
+import dev.dnpm.etl.processor.config.TransformationProperties
+import dev.dnpm.etl.processor.config.TransformationRulesConfigProperties
+import org.slf4j.LoggerFactory
+import org.springframework.core.io.FileSystemResourceLoader
+import org.springframework.scheduling.annotation.Scheduled
+import tools.jackson.databind.json.JsonMapper
+import java.nio.file.Files
+import java.nio.file.Path
+
+/**
+ * Loads transformation rules from a JSON file and activates them on change without restart.
+ * Changes to CSV files of mapping tables referenced in the JSON file are detected as well.
+ *
+ * If the file cannot be read or contains invalid rules, the active rules are kept.
+ *
+ * @since 0.17.0
+ */
+class TransformationRulesLoader(
+    private val transformationService: TransformationService,
+    private val configProperties: TransformationRulesConfigProperties,
+    private val jsonMapper: JsonMapper,
+) {
+    private val logger = LoggerFactory.getLogger(TransformationRulesLoader::class.java)
+
+    private val resourceLoader = FileSystemResourceLoader()
+
+    @Volatile
+    private var lastModified: List<Long>? = null
+
+    @Volatile
+    private var mappingTableFiles: List<String> = listOf()
+
+    /**
+     * Activates rules of the configured file if the file or a referenced CSV file has been modified since last check
+     *
+     * @return true if rules of the file have been read
+     */
+    @Synchronized
+    @Scheduled(fixedDelayString = "\${app.transformation-rules.check-interval:10s}")
+    fun reload(): Boolean {
+        val file = configProperties.file?.let { Path.of(it) } ?: return false
+
+        try {
+            val modified = lastModified(file)
+            if (modified == lastModified) {
+                return false
+            }
+            // Invalid files are not read again until modified
+            lastModified = modified
+
+            val rulesFile = Files.newBufferedReader(file).use { jsonMapper.readValue(it, TransformationRulesFile::class.java) }
+            val files = rulesFile.mappingTables.mapNotNull { it.file }
+            if (files != mappingTableFiles) {
+                mappingTableFiles = files
+                lastModified = lastModified(file)
+            }
+            val rules =
+                transformationService.update(
+                    rulesFile.transformations.map { Transformation.of(it.path) from it.from to it.to },
+                    rulesFile.mappingTables.map { MappingTable.of(it) },
+                )
+            logger.info(
+                "Using transformation rules version '{}' with {} transformations and {} mapping tables",
+                rules.version,
+                rules.transformations.size,
+                rules.mappingTables.size,
+            )
+            return true
+        } catch (e: Exception) {
+            logger.error(
+                "Cannot read transformation rules from '{}' - keeping rules version '{}'",
+                file,
+                transformationService.getRulesVersion(),
+                e,
+            )
+            return false
+        }
+    }
+
+    /**
+     * Returns modification times of the JSON file and all CSV files referenced on last read.
+     * Missing CSV files are included as `0` to detect them when created.
+     */
+    private fun lastModified(file: Path): List<Long> =
+        listOf(Files.getLastModifiedTime(file).toMillis()) +
+            mappingTableFiles.map { csvFile ->
+                resourceLoader.getResource(csvFile).let { if (it.exists()) it.lastModified() else 0L }
+            }
+}
+
+data class TransformationRulesFile(
+    val transformations: List<TransformationProperties> = listOf(),
+    val mappingTables: List<MappingTableProperties> = listOf(),
+)
@@ -22,59 +22,409 @@ package dev.dnpm.etl.processor.services
 
 import com.jayway.jsonpath.JsonPath
 import com.jayway.jsonpath.PathNotFoundException
+import dev.dnpm.etl.processor.config.MappingTableProperties
 import dev.pcvolkmer.mv64e.mtb.Mtb
+import org.apache.commons.codec.digest.DigestUtils
+import org.springframework.core.io.FileSystemResourceLoader
+import org.springframework.core.io.ResourceLoader
+import tools.jackson.databind.JsonNode
 import tools.jackson.databind.json.JsonMapper
+import tools.jackson.databind.node.ArrayNode
+import tools.jackson.databind.node.ObjectNode
+import java.io.Reader
+import java.time.Instant
+import java.util.concurrent.atomic.AtomicReference
+import java.util.concurrent.atomic.LongAdder
 
 class TransformationService(
     private val jsonMapper: JsonMapper,
-    private val transformations: List<Transformation>,
+    transformations: List<Transformation>,
+    mappingTables: List<MappingTable> = listOf(),
 ) {
-    fun transform(mtbFile: Mtb): Mtb {
-        val json = transform(jsonMapper.writeValueAsString(mtbFile))
-        return jsonMapper.readValue(json, Mtb::class.java)
+    private val rules = AtomicReference(TransformationRules.compile(jsonMapper, transformations, mappingTables))
+
+    /**
+     * Returns the active rules or `null` if neither transformations nor mapping tables are configured.
+     * Returned rules remain usable after other rules have been activated.
+     */
+    fun currentRules(): TransformationRules? = rules.get().takeIf { it.hasRules() }
+
+    fun transform(mtbFile: Mtb): Mtb = transform(mtbFile, currentRules())
+
+    /**
+     * Applies the given rules to the given MTB file
+     *
+     * @return a transformed copy or the given MTB file itself if no transformation was applied
+     */
+    fun transform(
+        mtbFile: Mtb,
+        rules: TransformationRules?,
+    ): Mtb {
+        if (null == rules || !rules.hasRules()) {
+            return mtbFile
+        }
+        val document = rules.plan.apply(jsonMapper.valueToTree(mtbFile)) ?: return mtbFile
+        return jsonMapper.treeToValue(document, Mtb::class.java)
     }
 
-    private fun transform(content: String): String {
-        var json = content
+    /**
+     * Compiles and activates the given rules. Requests in progress complete using the previous
+     * rules. Rules are not replaced if the version is unchanged.
+     *
+     * @return the active rules
+     */
+    fun update(
+        transformations: List<Transformation>,
+        mappingTables: List<MappingTable>,
+    ): TransformationRules {
+        val compiled = TransformationRules.compile(jsonMapper, transformations, mappingTables)
+        return rules.updateAndGet { current -> if (current.version == compiled.version) current else compiled }
+    }
 
-        transformations.forEach { transformation ->
-            val jsonPath = JsonPath.parse(json)
+    fun getTransformations(): List<Transformation> = rules.get().transformations
 
-            try {
-                val before = transformation.path.substringBeforeLast(".")
-                val last = transformation.path.substringAfterLast(".")
+    fun getMappingTables(): List<MappingTable> = rules.get().mappingTables
 
-                val existingValue =
-                    if (transformation.existingValue is Number) {
-                        transformation.existingValue
-                    } else {
-                        transformation.existingValue.toString()
+    fun getRulesVersion(): String = rules.get().version
+
+    /**
+     * Returns true if any transformation or mapping table is configured
+     */
+    fun hasRules(): Boolean = rules.get().hasRules()
+}
+
+/**
+ * Immutable set of transformation rules compiled into a plan.
+ *
+ * The version is derived from the rules, so equal rules always have the same version.
+ *
+ * @since 0.17.0
+ */
+class TransformationRules private constructor(
+    val version: String,
+    val transformations: List<Transformation>,
+    val mappingTables: List<MappingTable>,
+    internal val plan: TransformationPlan,
+) {
+    val activatedAt: Instant = Instant.now()
+
+    fun hasRules(): Boolean = !plan.isEmpty()
+
+    companion object {
+        internal fun compile(
+            jsonMapper: JsonMapper,
+            transformations: List<Transformation>,
+            mappingTables: List<MappingTable>,
+        ): TransformationRules {
+            val content =
+                transformations.joinToString("\n") { "${it.path}\t${it.existingValue}\t${it.newValue}" } + "\n" +
+                    mappingTables.joinToString("\n") { table ->
+                        table.path + "\t" + table.entries.toSortedMap().entries.joinToString("\t") { "${it.key}=${it.value}" }
+                    }
+            return TransformationRules(
+                DigestUtils.sha256Hex(content).take(12),
+                transformations,
+                mappingTables,
+                TransformationPlan.compile(jsonMapper, transformations, mappingTables),
+            )
+        }
+    }
+}
+
+/**
+ * Transformation rules compiled into stages applied to a JSON document.
+ *
+ * Consecutive rules with simple paths (property names and `[*]`) are applied within a single
+ * traversal of the document, following only paths still matching any rule. Rules using other
+ * JsonPath expressions are applied using JsonPath as before. Each rule sets the value at
+ * `"$.$before.[?]$last"` if the current value is equal to the existing value, rules are applied in
+ * configured order. Mapping tables are applied after all transformations, looking up the current
+ * value of each matching node.
+ *
+ * @since 0.17.0
+ */
+internal class TransformationPlan private constructor(
+    private val stages: List<Stage>,
+) {
+    fun isEmpty(): Boolean = stages.isEmpty()
+
+    /**
+     * Returns the transformed document or `null` if no rule changed the document
+     */
+    fun apply(document: JsonNode): JsonNode? {
+        var current = document
+        var changed = false
+        stages.forEach { stage ->
+            stage.apply(current)?.let {
+                current = it
+                changed = true
+            }
+        }
+        return if (changed) current else null
+    }
+
+    private sealed interface Stage {
+        /**
+         * Returns the transformed document or `null` if the document has not been changed
+         */
+        fun apply(document: JsonNode): JsonNode?
+    }
+
+    private class TraversalStage(
+        private val rules: List<CompiledRule>,
+    ) : Stage {
+        override fun apply(document: JsonNode): JsonNode? =
+            if (visit(document, rules.map { Step(it, 0) }, emptyList())) document else null
+
+        private fun visit(
+            node: JsonNode,
+            steps: List<Step>,
+            inheritedRules: List<CompiledRule>,
+        ): Boolean {
+            var changed = false
+            val completed = steps.filter { it.completed }.map { it.rule }
+            val pending = steps.filter { !it.completed }
+
+            when (node) {
+                is ObjectNode -> {
+                    // Filter `[?]` on an object matches the object itself
+                    (inheritedRules + completed).sortedBy { it.index }.forEach {
+                        changed = it.applyTo(node) || changed
                     }
-                val newValue =
-                    if (transformation.newValue is Number) {
-                        transformation.newValue
+                    if (pending.isEmpty()) {
+                        return changed
+                    }
+                    val wildcardSteps = pending.filter { it.segment == Segment.Wildcard }.map { it.next() }
+                    val propertySteps =
+                        pending
+                            .filter { it.segment is Segment.Property }
+                            .groupBy({ (it.segment as Segment.Property).name }, { it.next() })
+                    if (wildcardSteps.isEmpty()) {
+                        propertySteps.forEach { (name, next) ->
+                            node.get(name)?.let { child -> changed = visit(child, next, emptyList()) || changed }
+                        }
                     } else {
-                        transformation.newValue.toString()
+                        node.properties().toList().forEach { (name, child) ->
+                            changed = visit(child, wildcardSteps + propertySteps[name].orEmpty(), emptyList()) || changed
+                        }
+                    }
+                }
+
+                is ArrayNode -> {
+                    // Filter `[?]` on an array matches its elements, properties of an array never match
+                    val wildcardSteps = pending.filter { it.segment == Segment.Wildcard }.map { it.next() }
+                    if (completed.isEmpty() && wildcardSteps.isEmpty()) {
+                        return false
                     }
+                    node.forEach { element ->
+                        if (element is ObjectNode) {
+                            changed = visit(element, wildcardSteps, completed) || changed
+                        } else if (wildcardSteps.isNotEmpty()) {
+                            changed = visit(element, wildcardSteps, emptyList()) || changed
+                        }
+                    }
+                }
+
+                else -> {}
+            }
+            return changed
+        }
+    }
+
+    private class JsonPathStage(
+        private val jsonMapper: JsonMapper,
+        private val transformation: Transformation,
+    ) : Stage {
+        override fun apply(document: JsonNode): JsonNode? {
+            val jsonPath = JsonPath.parse(jsonMapper.writeValueAsString(document))
+            var matches = 0
+
+            try {
+                val before = transformation.path.substringBeforeLast(".")
+                val last = transformation.path.substringAfterLast(".")
+                val existingValue = transformation.expectedValue()
 
                 jsonPath.set(
                     "$.$before.[?]$last",
-                    newValue,
-                    { it.item(HashMap::class.java)[last] == existingValue },
+                    transformation.replacementValue(),
+                    { (it.item(HashMap::class.java)[last] == existingValue).also { matched -> if (matched) matches++ } },
                 )
             } catch (_: PathNotFoundException) {
                 // Ignore
             }
 
-            json = jsonPath.jsonString()
+            return if (matches > 0) jsonMapper.readTree(jsonPath.jsonString()) else null
         }
+    }
+
+    private sealed interface Segment {
+        data class Property(
+            val name: String,
+        ) : Segment
 
-        return json
+        data object Wildcard : Segment
     }
 
-    fun getTransformations(): List<Transformation> = this.transformations
+    private class Step(
+        val rule: CompiledRule,
+        val position: Int,
+    ) {
+        val completed: Boolean
+            get() = position == rule.segments.size
+
+        val segment: Segment
+            get() = rule.segments[position]
+
+        fun next(): Step = Step(rule, position + 1)
+    }
+
+    private abstract class CompiledRule(
+        val index: Int,
+        val segments: List<Segment>,
+        private val last: String,
+    ) {
+        fun applyTo(node: ObjectNode): Boolean {
+            val newValue = replacement(node.get(last) ?: return false) ?: return false
+            node.set(last, newValue)
+            return true
+        }
+
+        /**
+         * Returns the new value or `null` if the current value must not be replaced
+         */
+        abstract fun replacement(value: JsonNode): JsonNode?
+    }
+
+    private class ValueRule(
+        index: Int,
+        segments: List<Segment>,
+        last: String,
+        private val existingValue: Any,
+        private val newValue: JsonNode,
+    ) : CompiledRule(index, segments, last) {
+        override fun replacement(value: JsonNode): JsonNode? = if (matches(value)) newValue else null
+
+        private fun matches(value: JsonNode): Boolean =
+            when {
+                existingValue is String -> value.isString && value.stringValue() == existingValue
+                value.isIntegralNumber ->
+                    (existingValue is Int || existingValue is Long || existingValue is Short || existingValue is Byte) &&
+                        value.longValue() == (existingValue as Number).toLong()
+                value.isFloatingPointNumber ->
+                    (existingValue is Double || existingValue is Float) &&
+                        value.doubleValue() == (existingValue as Number).toDouble()
+                else -> false
+            }
+    }
+
+    private class MappingRule(
+        index: Int,
+        segments: List<Segment>,
+        last: String,
+        private val mappingTable: MappingTable,
+        private val newValues: Map<String, JsonNode>,
+    ) : CompiledRule(index, segments, last) {
+        override fun replacement(value: JsonNode): JsonNode? {
+            if (!value.isString) {
+                return null
+            }
+            return newValues[value.stringValue()]?.also { mappingTable.hit() }
+        }
+    }
+
+    companion object {
+        private val NAME = Regex("[A-Za-z0-9_-]+")
+        private val SEGMENT = Regex("([A-Za-z0-9_-]+)((?:\\[\\*])*)")
+
+        fun compile(
+            jsonMapper: JsonMapper,
+            transformations: List<Transformation>,
+            mappingTables: List<MappingTable> = listOf(),
+        ): TransformationPlan {
+            val stages = mutableListOf<Stage>()
+            var rules = mutableListOf<CompiledRule>()
+
+            transformations.forEachIndexed { index, transformation ->
+                val rule = compileValueRule(jsonMapper, index, transformation)
+                if (rule != null) {
+                    rules.add(rule)
+                } else {
+                    if (rules.isNotEmpty()) {
+                        stages.add(TraversalStage(rules))
+                        rules = mutableListOf()
+                    }
+                    stages.add(JsonPathStage(jsonMapper, transformation))
+                }
+            }
+            mappingTables.forEachIndexed { index, mappingTable ->
+                rules.add(compileMappingRule(jsonMapper, transformations.size + index, mappingTable))
+            }
+            if (rules.isNotEmpty()) {
+                stages.add(TraversalStage(rules))
+            }
+
+            return TransformationPlan(stages)
+        }
+
+        /**
+         * Returns compiled rule or `null` if path cannot be applied without using JsonPath
+         */
+        private fun compileValueRule(
+            jsonMapper: JsonMapper,
+            index: Int,
+            transformation: Transformation,
+        ): CompiledRule? {
+            val segments = segments(transformation.path) ?: return null
+            return ValueRule(
+                index,
+                segments,
+                transformation.path.substringAfterLast("."),
+                transformation.expectedValue(),
+                jsonMapper.valueToTree(transformation.replacementValue()),
+            )
+        }
+
+        private fun compileMappingRule(
+            jsonMapper: JsonMapper,
+            index: Int,
+            mappingTable: MappingTable,
+        ): CompiledRule {
+            val segments =
+                segments(mappingTable.path)
+                    ?: throw IllegalArgumentException("Unsupported path '${mappingTable.path}' for mapping table")
+            return MappingRule(
+                index,
+                segments,
+                mappingTable.path.substringAfterLast("."),
+                mappingTable,
+                mappingTable.entries.mapValues { (_, newValue) -> jsonMapper.valueToTree<JsonNode>(newValue) },
+            )
+        }
+
+        /**
+         * Returns segments of the path before the last property or `null` if the path is not a
+         * plain path of property names and `[*]`
+         */
+        private fun segments(path: String): List<Segment>? {
+            if (!NAME.matches(path.substringAfterLast("."))) {
+                return null
+            }
+
+            val segments = mutableListOf<Segment>()
+            for (part in path.substringBeforeLast(".").split(".")) {
+                val match = SEGMENT.matchEntire(part) ?: return null
+                segments.add(Segment.Property(match.groupValues[1]))
+                repeat(match.groupValues[2].length / 3) { segments.add(Segment.Wildcard) }
+            }
+            return segments
+        }
+    }
 }
 
+private fun Transformation.expectedValue(): Any = if (existingValue is Number) existingValue else existingValue.toString()
+
+private fun Transformation.replacementValue(): Any = if (newValue is Number) newValue else newValue.toString()
+
 class Transformation
     private constructor(
         val path: String,
@@ -99,3 +449,68 @@ class Transformation
             fun of(path: String): Transformation = Transformation(path)
         }
     }
+
+/**
+ * Table mapping existing values to new values at the given path
+ *
+ * @since 0.17.0
+ */
+class MappingTable(
+    val path: String,
+    val entries: Map<String, String>,
+    /** Name of the file entries have been read from or `null` for inline entries */
+    val source: String? = null,
+) {
+    private val hitCount = LongAdder()
+
+    val size: Int
+        get() = entries.size
+
+    /** Number of values replaced using this table */
+    val hits: Long
+        get() = hitCount.sum()
+
+    internal fun hit() = hitCount.increment()
+
+    companion object {
+        /**
+         * Creates a mapping table using inline entries and entries of the configured CSV file.
+         * Inline entries override file entries.
+         */
+        fun of(
+            properties: MappingTableProperties,
+            resourceLoader: ResourceLoader = FileSystemResourceLoader(),
+        ): MappingTable {
+            val fileEntries =
+                properties.file?.let { file ->
+                    resourceLoader.getResource(file).inputStream.reader().use { readCsv(it, properties.separator) }
+                }.orEmpty()
+            return MappingTable(
+                properties.path,
+                fileEntries + properties.entries.associate { it.from to it.to },
+                properties.file,
+            )
+        }
+
+        /**
+         * Reads CSV content with existing and new value per line. Empty lines and lines starting
+         * with `#` are ignored.
+         */
+        fun readCsv(
+            reader: Reader,
+            separator: Char = ',',
+        ): Map<String, String> =
+            reader.useLines { lines ->
+                lines
+                    .withIndex()
+                    .filter { (_, line) -> line.isNotBlank() && !line.trimStart().startsWith("#") }
+                    .associate { (index, line) ->
+                        val values = line.split(separator, limit = 2)
+                        if (values.size != 2) {
+                            throw IllegalArgumentException("Invalid mapping in line ${index + 1}")
+                        }
+                        values[0].trim() to values[1].trim()
+                    }
+            }
+    }
+}
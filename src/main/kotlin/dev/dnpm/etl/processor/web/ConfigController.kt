@@ -20,14 +20,17 @@
 
 package dev.dnpm.etl.processor.web
 
+import dev.dnpm.etl.processor.consent.ConsentCache
 import dev.dnpm.etl.processor.monitoring.*
 import dev.dnpm.etl.processor.output.MtbFileSender
 import dev.dnpm.etl.processor.pseudonym.Generator
+import dev.dnpm.etl.processor.resilience.CircuitBreakerRegistry
 import dev.dnpm.etl.processor.security.Role
 import dev.dnpm.etl.processor.security.Token
 import dev.dnpm.etl.processor.security.TokenService
 import dev.dnpm.etl.processor.security.UserRole
 import dev.dnpm.etl.processor.security.UserRoleService
+import dev.dnpm.etl.processor.services.ConsentRecheckService
 import dev.dnpm.etl.processor.services.TransformationService
 import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.http.MediaType
@@ -49,6 +52,9 @@ class ConfigController(
     private val connectionCheckServices: List<ConnectionCheckService>,
     private val tokenService: TokenService?,
     private val userRoleService: UserRoleService?,
+    private val circuitBreakerRegistry: CircuitBreakerRegistry?,
+    private val consentCache: ConsentCache?,
+    private val consentRecheckService: ConsentRecheckService?,
 ) {
 
   @GetMapping
@@ -77,6 +83,9 @@ class ConfigController(
     model.addAttribute("outputConnectionAvailable", outputConnectionAvailable)
     model.addAttribute("gPasConnectionAvailable", gPasConnectionAvailable)
     model.addAttribute("gIcsConnectionAvailable", gIcsConnectionAvailable)
+    model.addAttribute("circuitBreakers", circuitBreakerRegistry?.findAll().orEmpty())
+    model.addAttribute("consentCache", consentCache)
+    addConsentRecheckAttributes(model)
     model.addAttribute("tokensEnabled", tokenService != null)
     if (tokenService != null) {
       model.addAttribute("tokens", tokenService.findAll())
@@ -84,6 +93,8 @@ class ConfigController(
       model.addAttribute("tokens", emptyList<Token>())
     }
     model.addAttribute("transformations", transformationService.getTransformations())
+    model.addAttribute("mappingTables", transformationService.getMappingTables())
+    model.addAttribute("transformationRulesVersion", transformationService.getRulesVersion())
     if (userRoleService != null) {
       model.addAttribute("userRolesEnabled", true)
       model.addAttribute("userRoles", userRoleService.findAll())
@@ -157,6 +168,44 @@ class ConfigController(
     return "configs/gIcsConnectionAvailable"
   }
 
+  @GetMapping(params = ["circuitBreakers"])
+  fun circuitBreakers(model: Model): String {
+    model.addAttribute("circuitBreakers", circuitBreakerRegistry?.findAll().orEmpty())
+
+    return "configs/circuitBreakers"
+  }
+
+  @GetMapping(params = ["consentCache"])
+  fun consentCache(model: Model): String {
+    model.addAttribute("consentCache", consentCache)
+
+    return "configs/consentCache"
+  }
+
+  @DeleteMapping(path = ["consentcache"])
+  fun invalidateConsentCache(
+      @RequestParam(required = false) patientId: String?,
+      model: Model,
+  ): String {
+    if (consentCache != null) {
+      if (patientId.isNullOrBlank()) {
+        consentCache.clear()
+      } else {
+        model.addAttribute("invalidatedEntries", consentCache.invalidate(patientId.trim()))
+      }
+    }
+    model.addAttribute("consentCache", consentCache)
+
+    return "configs/consentCache"
+  }
+
+  @GetMapping(params = ["consentRecheck"])
+  fun consentRecheck(model: Model): String {
+    addConsentRecheckAttributes(model)
+
+    return "configs/consentRecheck"
+  }
+
   @PostMapping(path = ["tokens"])
   fun addToken(@ModelAttribute("name") name: String, model: Model): String {
     if (tokenService == null) {
@@ -222,6 +271,11 @@ class ConfigController(
     return "configs/userroles"
   }
 
+  private fun addConsentRecheckAttributes(model: Model) {
+    model.addAttribute("consentRecheck", consentRecheckService)
+    model.addAttribute("pendingReexports", consentRecheckService?.pendingReexports().orEmpty())
+  }
+
   @GetMapping(path = ["events"], produces = [MediaType.TEXT_EVENT_STREAM_VALUE])
   @ResponseBody
   fun events(): Flux<ServerSentEvent<Any>> {
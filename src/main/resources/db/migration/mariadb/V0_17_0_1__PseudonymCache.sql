@@ -0,0 +1,8 @@
+CREATE TABLE IF NOT EXISTS pseudonym_cache
+(
+    id                  int auto_increment primary key,
+    patient_id_hash     varchar(64)                          not null unique,
+    pseudonym           varchar(255)                         not null,
+    created_at          datetime     default utc_timestamp() not null,
+    INDEX pseudonym_cache_created_at (created_at)
+);
@@ -0,0 +1,13 @@
+CREATE TABLE IF NOT EXISTS consent_recheck
+(
+    id                   int auto_increment primary key,
+    patient_pseudonym    varchar(255)                         not null unique,
+    patient_id_hash      varchar(64)                          not null,
+    encrypted_patient_id varchar(512)                         not null,
+    request_uuid         varchar(255)                         not null,
+    consent_status       varchar(64)                          not null,
+    created_at           datetime     default utc_timestamp() not null,
+    checked_at           datetime,
+    consent_given_at     datetime,
+    INDEX consent_recheck_patient_id_hash (patient_id_hash)
+);
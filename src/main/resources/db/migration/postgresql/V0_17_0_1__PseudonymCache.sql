@@ -0,0 +1,9 @@
+CREATE TABLE IF NOT EXISTS pseudonym_cache
+(
+    id                  serial,
+    patient_id_hash     varchar(64)                            not null unique,
+    pseudonym           varchar(255)                           not null,
+    created_at          timestamp with time zone default now() not null,
+    PRIMARY KEY (id)
+);
+CREATE INDEX IF NOT EXISTS pseudonym_cache_created_at ON pseudonym_cache (created_at);
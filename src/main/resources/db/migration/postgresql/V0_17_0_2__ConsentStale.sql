@@ -0,0 +1 @@
+ALTER TABLE request ADD COLUMN consent_stale boolean not null default false;
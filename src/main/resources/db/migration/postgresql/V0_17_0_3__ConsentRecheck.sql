@@ -0,0 +1,14 @@
+CREATE TABLE IF NOT EXISTS consent_recheck
+(
+    id                   serial,
+    patient_pseudonym    varchar(255)                           not null unique,
+    patient_id_hash      varchar(64)                            not null,
+    encrypted_patient_id varchar(512)                           not null,
+    request_uuid         varchar(255)                           not null,
+    consent_status       varchar(64)                            not null,
+    created_at           timestamp with time zone default now() not null,
+    checked_at           timestamp with time zone,
+    consent_given_at     timestamp with time zone,
+    PRIMARY KEY (id)
+);
+CREATE INDEX IF NOT EXISTS consent_recheck_patient_id_hash ON consent_recheck (patient_id_hash);
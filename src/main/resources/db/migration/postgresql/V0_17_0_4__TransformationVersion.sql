@@ -0,0 +1 @@
+ALTER TABLE request ADD COLUMN transformation_version varchar(64);
@@ -0,0 +1,231 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Date;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class CachingConsentServiceTest {
+
+  static final Date REQUEST_DATE = Date.from(Instant.parse("2026-01-01T12:00:00Z"));
+
+  @Mock IConsentService delegate;
+
+  ConsentCache consentCache;
+  CachingConsentService service;
+
+  @BeforeEach
+  void setUp() {
+    var clock = Clock.fixed(Instant.parse("2026-01-01T12:00:00Z"), ZoneOffset.UTC);
+    this.consentCache = new ConsentCache(Duration.ofHours(1), 100, clock);
+    this.service = new CachingConsentService(delegate, consentCache);
+  }
+
+  @Test
+  void shouldUseCachedConsent() {
+    doAnswer(invocation -> new Bundle().setTotal(1))
+        .when(delegate)
+        .getConsent(anyString(), any(), any());
+
+    service.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+    var actual = service.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+
+    assertThat(actual.getTotal()).isEqualTo(1);
+    verify(delegate, times(1)).getConsent(anyString(), any(), any());
+    assertThat(consentCache.hits()).isEqualTo(1);
+    assertThat(consentCache.misses()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotShareCachedBundle() {
+    doAnswer(invocation -> new Bundle().setTotal(1))
+        .when(delegate)
+        .getConsent(anyString(), any(), any());
+
+    service.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT).setTotal(42);
+    var actual = service.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+
+    assertThat(actual.getTotal()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldCachePerConsentDomain() {
+    doAnswer(invocation -> new Bundle()).when(delegate).getConsent(anyString(), any(), any());
+
+    service.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+    service.getConsent("123456", REQUEST_DATE, ConsentDomain.MODELLVORHABEN_64E);
+
+    verify(delegate, times(2)).getConsent(anyString(), any(), any());
+  }
+
+  @Test
+  void shouldRequestConsentAgainAfterInvalidation() {
+    doAnswer(invocation -> new Bundle()).when(delegate).getConsent(anyString(), any(), any());
+
+    service.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+    service.getConsent("654321", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+
+    assertThat(consentCache.invalidate("123456")).isEqualTo(1);
+
+    service.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+    service.getConsent("654321", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+
+    verify(delegate, times(3)).getConsent(anyString(), any(), any());
+  }
+
+  @Test
+  void shouldNotCacheFailedBroadConsentStatus() {
+    doReturn(TtpConsentStatus.FAILED_TO_ASK).when(delegate).getTtpBroadConsentStatus(anyString());
+
+    service.getTtpBroadConsentStatus("123456");
+    service.getTtpBroadConsentStatus("123456");
+
+    verify(delegate, times(2)).getTtpBroadConsentStatus(anyString());
+  }
+
+  @Test
+  void shouldCacheBroadConsentStatus() {
+    doReturn(TtpConsentStatus.BROAD_CONSENT_GIVEN)
+        .when(delegate)
+        .getTtpBroadConsentStatus(anyString());
+
+    service.getTtpBroadConsentStatus("123456");
+    var actual = service.getTtpBroadConsentStatus("123456");
+
+    assertThat(actual).isEqualTo(TtpConsentStatus.BROAD_CONSENT_GIVEN);
+    verify(delegate, times(1)).getTtpBroadConsentStatus(anyString());
+  }
+
+  @Test
+  void shouldUseStaleConsentIfConsentRequestFails() {
+    var clock = Clock.fixed(Instant.parse("2026-01-01T12:00:00Z"), ZoneOffset.UTC);
+    var cache = new ConsentCache(Duration.ofHours(1), 100, Duration.ofDays(7), clock);
+    var degradedService = new CachingConsentService(delegate, cache, Runnable::run);
+    doAnswer(invocation -> new Bundle().setTotal(1))
+        .doThrow(new IllegalStateException("consent data request failed"))
+        .when(delegate)
+        .getConsent(anyString(), any(), any());
+
+    var nextDay = Date.from(Instant.parse("2026-01-02T12:00:00Z"));
+    var fresh = degradedService.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+    var stale = degradedService.getConsent("123456", nextDay, ConsentDomain.BROAD_CONSENT);
+
+    assertThat(CachingConsentService.isStale(fresh)).isFalse();
+    assertThat(CachingConsentService.isStale(stale)).isTrue();
+    assertThat(stale.getTotal()).isEqualTo(1);
+    assertThat(cache.staleHits()).isEqualTo(1);
+    // Initial request, failed request and revalidation
+    verify(delegate, times(3)).getConsent(anyString(), any(), any());
+  }
+
+  @Test
+  void shouldNotUseStaleConsentWithoutDegradedMode() {
+    doAnswer(invocation -> new Bundle())
+        .doThrow(new IllegalStateException("consent data request failed"))
+        .when(delegate)
+        .getConsent(anyString(), any(), any());
+
+    var nextDay = Date.from(Instant.parse("2026-01-02T12:00:00Z"));
+    service.getConsent("123456", REQUEST_DATE, ConsentDomain.BROAD_CONSENT);
+
+    assertThatThrownBy(
+            () -> service.getConsent("123456", nextDay, ConsentDomain.BROAD_CONSENT))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void shouldUseStaleBroadConsentStatusIfRequestFails() {
+    var clock = new MutableClock(Instant.parse("2026-01-01T12:00:00Z"));
+    var cache = new ConsentCache(Duration.ofHours(1), 100, Duration.ofDays(7), clock);
+    var degradedService = new CachingConsentService(delegate, cache, Runnable::run);
+    doReturn(TtpConsentStatus.BROAD_CONSENT_GIVEN)
+        .doReturn(TtpConsentStatus.FAILED_TO_ASK)
+        .when(delegate)
+        .getTtpBroadConsentStatus(anyString());
+
+    degradedService.getTtpBroadConsentStatus("123456");
+    clock.instant = clock.instant.plus(Duration.ofHours(2));
+    var actual = degradedService.getTtpBroadConsentStatus("123456");
+
+    assertThat(actual).isEqualTo(TtpConsentStatus.BROAD_CONSENT_GIVEN);
+    assertThat(cache.staleHits()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotUseStaleBroadConsentStatusOlderThanMaxStaleness() {
+    var clock = new MutableClock(Instant.parse("2026-01-01T12:00:00Z"));
+    var cache = new ConsentCache(Duration.ofHours(1), 100, Duration.ofDays(7), clock);
+    var degradedService = new CachingConsentService(delegate, cache, Runnable::run);
+    doReturn(TtpConsentStatus.BROAD_CONSENT_GIVEN)
+        .doReturn(TtpConsentStatus.FAILED_TO_ASK)
+        .when(delegate)
+        .getTtpBroadConsentStatus(anyString());
+
+    degradedService.getTtpBroadConsentStatus("123456");
+    clock.instant = clock.instant.plus(Duration.ofDays(8));
+    var actual = degradedService.getTtpBroadConsentStatus("123456");
+
+    assertThat(actual).isEqualTo(TtpConsentStatus.FAILED_TO_ASK);
+  }
+
+  static class MutableClock extends Clock {
+    Instant instant;
+
+    MutableClock(Instant instant) {
+      this.instant = instant;
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return instant;
+    }
+  }
+}
@@ -22,6 +22,7 @@ package dev.dnpm.etl.processor.consent;
 
 import static dev.dnpm.etl.processor.consent.GicsConsentService.IS_CONSENTED_ENDPOINT;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.content;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
@@ -31,6 +32,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import dev.dnpm.etl.processor.config.AppConfiguration;
 import dev.dnpm.etl.processor.config.AppFhirConfig;
 import dev.dnpm.etl.processor.config.GIcsConfigProperties;
+import dev.dnpm.etl.processor.config.GIcsRequestFormat;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
 import java.time.Instant;
@@ -170,6 +172,62 @@ class GicsConsentServiceTest {
     assertThat(consentStatus).isEqualTo(TtpConsentStatus.FAILED_TO_ASK);
   }
 
+  @Test
+  void shouldSendXmlRequestByDefault() throws Exception {
+    mockRestServiceServer
+        .expect(requestTo(expectedGicsConsentedEndpoint()))
+        .andExpect(content().contentType(MediaType.APPLICATION_XML))
+        .andRespond(withServerError());
+
+    gicsConsentService.getTtpBroadConsentStatus("123456");
+
+    mockRestServiceServer.verify();
+  }
+
+  @Test
+  void shouldSendJsonRequestFromTemplate() throws Exception {
+    var properties =
+        new GIcsConfigProperties(
+            gIcsConfigProperties.getUri(),
+            gIcsConfigProperties.getUsername(),
+            gIcsConfigProperties.getPassword(),
+            gIcsConfigProperties.getPersonIdentifierSystem(),
+            gIcsConfigProperties.getBroadConsentDomainName(),
+            gIcsConfigProperties.getGenomDeConsentDomainName(),
+            gIcsConfigProperties.getBroadConsentPolicyCode(),
+            gIcsConfigProperties.getBroadConsentPolicySystem(),
+            gIcsConfigProperties.getBroadConsentPolicyUri(),
+            gIcsConfigProperties.getGenomeDePolicyCode(),
+            gIcsConfigProperties.getGenomeDePolicySystem(),
+            gIcsConfigProperties.getGenomeDeConsentVersion(),
+            GIcsRequestFormat.JSON);
+    var restTemplate = new RestTemplate();
+    var server = MockRestServiceServer.createServer(restTemplate);
+    var service =
+        new GicsConsentService(
+            properties,
+            RetryTemplate.builder().maxAttempts(1).build(),
+            restTemplate,
+            appFhirConfig);
+
+    server
+        .expect(requestTo(expectedGicsConsentedEndpoint()))
+        .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+        .andExpect(
+            content()
+                .json(
+                    appFhirConfig
+                        .fhirContext()
+                        .newJsonParser()
+                        .encodeResourceToString(service.getFhirRequestParameters("123456"))))
+        .andRespond(withServerError());
+
+    var consentStatus = service.getTtpBroadConsentStatus("123456");
+
+    assertThat(consentStatus).isEqualTo(TtpConsentStatus.FAILED_TO_ASK);
+    server.verify();
+  }
+
   @Test
   void buildRequestParameterCurrentPolicyStatesForPersonTest() {
     String pid = "12345678";
@@ -0,0 +1,99 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.time.Instant;
+import java.util.Date;
+import org.hl7.fhir.r4.model.DateType;
+import org.hl7.fhir.r4.model.Identifier;
+import org.hl7.fhir.r4.model.Parameters;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class GicsRequestTemplateTest {
+
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+  static Parameters parameters(String personIdentifierValue, Date requestDate) {
+    var parameters = new Parameters();
+    parameters.addParameter(
+        new Parameters.ParametersParameterComponent()
+            .setName("personIdentifier")
+            .setValue(
+                new Identifier()
+                    .setValue(personIdentifierValue)
+                    .setSystem("https://ths-greifswald.de/fhir/gics/identifiers/Patienten-ID")));
+    parameters.addParameter("domain", new StringType("MII"));
+    parameters.addParameter("requestDate", new DateType(requestDate));
+    return parameters;
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"123456", "P\"123\\456", "Pätient-ID", "2999-12-31"})
+  void shouldRenderRequestLikeFhirJsonParser(String personIdentifierValue) {
+    var requestDate = Date.from(Instant.parse("2026-01-01T12:00:00Z"));
+    var template = GicsRequestTemplate.compile(FHIR_CONTEXT, GicsRequestTemplateTest::parameters);
+
+    var actual = template.render(personIdentifierValue, requestDate);
+
+    assertThat(actual)
+        .isEqualTo(
+            FHIR_CONTEXT
+                .newJsonParser()
+                .encodeResourceToString(parameters(personIdentifierValue, requestDate)));
+  }
+
+  @Test
+  void shouldRenderRequestWithoutRequestDate() {
+    var template =
+        GicsRequestTemplate.compile(
+            FHIR_CONTEXT,
+            (personIdentifierValue, requestDate) ->
+                new Parameters().addParameter("personIdentifier", personIdentifierValue));
+
+    assertThat(template.render("123456")).contains("\"valueString\":\"123456\"");
+  }
+
+  @Test
+  void shouldNotRenderRequestWithoutRequiredRequestDate() {
+    var template = GicsRequestTemplate.compile(FHIR_CONTEXT, GicsRequestTemplateTest::parameters);
+
+    assertThatThrownBy(() -> template.render("123456"))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void shouldNotCompileTemplateWithoutPersonIdentifier() {
+    assertThatThrownBy(
+            () ->
+                GicsRequestTemplate.compile(
+                    FHIR_CONTEXT,
+                    (personIdentifierValue, requestDate) ->
+                        new Parameters().addParameter("domain", "MII")))
+        .isInstanceOf(IllegalStateException.class);
+  }
+}
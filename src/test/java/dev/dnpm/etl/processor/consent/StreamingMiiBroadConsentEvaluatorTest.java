@@ -0,0 +1,200 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.consent;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import ca.uhn.fhir.context.FhirContext;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.stream.Stream;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class StreamingMiiBroadConsentEvaluatorTest {
+
+  private static final FhirContext FHIR_CONTEXT = FhirContext.forR4();
+
+  @ParameterizedTest
+  @MethodSource("consentData")
+  void shouldEvaluateResponse(String filename, TtpConsentStatus status) throws Exception {
+    var inputStream =
+        Objects.requireNonNull(this.getClass().getClassLoader().getResourceAsStream(filename));
+
+    var actual =
+        StreamingMiiBroadConsentEvaluator.evaluate(
+            IOUtils.toString(inputStream, StandardCharsets.UTF_8));
+
+    assertThat(actual).isEqualTo(status);
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "fake_broadConsent_mii_response_permit.json",
+        "fake_broadConsent_mii_response_deny.json",
+        "fake_broadConsent_gics_response_permit.json",
+        "permittedConsentBundle.json",
+        "deniedConsentBundle.json"
+      })
+  void shouldEvaluateTestBundlesLikeMiiBroadConsentEvaluator(String filename) throws Exception {
+    var inputStream =
+        Objects.requireNonNull(this.getClass().getClassLoader().getResourceAsStream(filename));
+    var response = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+
+    assertThat(StreamingMiiBroadConsentEvaluator.evaluate(response))
+        .isEqualTo(MiiBroadConsentEvaluator.evaluate(FHIR_CONTEXT, response));
+  }
+
+  @ParameterizedTest
+  @MethodSource("responses")
+  void shouldEvaluateResponsesLikeMiiBroadConsentEvaluator(String response) {
+    assertThat(StreamingMiiBroadConsentEvaluator.evaluate(response))
+        .isEqualTo(MiiBroadConsentEvaluator.evaluate(FHIR_CONTEXT, response));
+  }
+
+  @Test
+  void shouldUseLaterConsentOverridingEarlierPermit() {
+    var response =
+        """
+        {"resourceType":"Bundle","type":"searchset","entry":[{"resource":{
+          "resourceType":"Consent","status":"active","provision":{"provision":[
+            {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.1"}]}]},
+            {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.7"}]}]},
+            {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.8"}]}]}
+          ]}}},{"resource":{
+          "resourceType":"Consent","status":"active","provision":{"provision":[
+            {"type":"deny","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.1"}]}]},
+            {"type":"deny","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.7"}]}]},
+            {"type":"deny","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.8"}]}]}
+          ]}}}]}
+        """;
+
+    assertThat(StreamingMiiBroadConsentEvaluator.evaluate(response))
+        .isEqualTo(TtpConsentStatus.BROAD_CONSENT_MISSING_OR_REJECTED)
+        .isEqualTo(MiiBroadConsentEvaluator.evaluate(FHIR_CONTEXT, response));
+  }
+
+  @Test
+  void shouldReturnFailedToAskWithoutResponse() {
+    assertThat(StreamingMiiBroadConsentEvaluator.evaluate(null))
+        .isEqualTo(TtpConsentStatus.FAILED_TO_ASK);
+  }
+
+  public static Stream<Arguments> consentData() {
+    return Stream.of(
+        Arguments.of(
+            "fake_broadConsent_mii_response_permit.json", TtpConsentStatus.BROAD_CONSENT_GIVEN),
+        Arguments.of(
+            "fake_broadConsent_mii_response_deny.json",
+            TtpConsentStatus.BROAD_CONSENT_MISSING_OR_REJECTED),
+        Arguments.of(
+            "fake_broadConsent_gics_response_permit.json", TtpConsentStatus.BROAD_CONSENT_GIVEN));
+  }
+
+  public static Stream<Arguments> responses() {
+    return Stream.of(
+        // Provision type after provision code
+        Arguments.of(
+            """
+            {"resourceType":"Bundle","type":"searchset","entry":[{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.7"}]}],"type":"permit"},
+                {"code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.8"}]}],"type":"permit"}
+              ]}}}]}
+            """),
+        // Patient data consent only
+        Arguments.of(
+            """
+            {"resourceType":"Bundle","type":"searchset","entry":[{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.1"}]}]}
+              ]}}}]}
+            """),
+        // Research use denied
+        Arguments.of(
+            """
+            {"resourceType":"Bundle","type":"searchset","entry":[{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.7"}]}]},
+                {"type":"deny","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.8"}]}]}
+              ]}}}]}
+            """),
+        // Later consent denies previously permitted patient data consent
+        Arguments.of(
+            """
+            {"resourceType":"Bundle","type":"searchset","entry":[{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.1"}]}]}
+              ]}}},{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"type":"deny","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.1"}]}]}
+              ]}}}]}
+            """),
+        // Later consent permits previously denied research use
+        Arguments.of(
+            """
+            {"resourceType":"Bundle","type":"searchset","entry":[{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.7"}]}]},
+                {"type":"deny","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.8"}]}]}
+              ]}}},{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.8"}]}]}
+              ]}}}]}
+            """),
+        // Resource type of bundle after its entries
+        Arguments.of(
+            """
+            {"type":"searchset","entry":[{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.1"}]}]}
+              ]}}},{"resource":{
+              "resourceType":"Consent","status":"active","provision":{"provision":[
+                {"type":"deny","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.1"}]}]}
+              ]}}}],"resourceType":"Bundle"}
+            """),
+        // Provisions of other resources are ignored
+        Arguments.of(
+            """
+            {"resourceType":"Bundle","type":"searchset","entry":[{"resource":{
+              "resourceType":"Basic","provision":{"provision":[
+                {"type":"permit","code":[{"coding":[{"code":"2.16.840.1.113883.3.1937.777.24.5.3.1"}]}]}
+              ]}}}]}
+            """),
+        // Empty bundle
+        Arguments.of(
+            """
+            {"resourceType":"Bundle","type":"searchset","total":0}
+            """),
+        // No bundle
+        Arguments.of(
+            """
+            {"resourceType":"Consent","status":"active"}
+            """),
+        // Invalid JSON
+        Arguments.of("{\"resourceType\":\"Bundle\",\"entry\":["));
+  }
+}
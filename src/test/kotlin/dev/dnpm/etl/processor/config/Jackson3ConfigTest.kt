@@ -24,6 +24,8 @@ import com.fasterxml.jackson.databind.node.ObjectNode
 import dev.pcvolkmer.mv64e.mtb.Mtb
 import dev.pcvolkmer.mv64e.mtb.MvhMetadata
 import org.assertj.core.api.Assertions.assertThat
+import org.hl7.fhir.r4.model.Bundle
+import org.hl7.fhir.r4.model.Consent
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.params.ParameterizedTest
@@ -89,4 +91,18 @@ class Jackson3ConfigTest {
         assertThat(actual).contains(""""lastUpdated":"2025-08-15T11:13:59.143+02:00"""")
         assertThat(actual).contains("""{"entry":[{"fullUrl":"http://localhost:8080/ttp-fhir/fhir/gics/Consent/7d3456c2-79b1-11f0-ab27-6ed0ed82d0fd"""")
     }
+
+    @Test
+    fun shouldSerializeConsentResourceLikeFhirJsonParser() {
+        val bundle =
+            JacksonConfig.fhirContext().newJsonParser().parseResource(
+                Bundle::class.java,
+                this.javaClass.classLoader.getResourceAsStream("fake_broadConsent_gics_response_permit.json"),
+            )
+        val consent = bundle.entry.map { it.resource }.filterIsInstance<Consent>().first()
+
+        val actual = this.jacksonConfig.jsonMapper().writeValueAsString(consent)
+
+        assertThat(actual).isEqualTo(JacksonConfig.fhirContext().newJsonParser().encodeResourceToString(consent))
+    }
 }
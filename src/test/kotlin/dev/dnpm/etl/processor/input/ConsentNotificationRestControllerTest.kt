@@ -0,0 +1,74 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.input
+
+import dev.dnpm.etl.processor.PatientId
+import dev.dnpm.etl.processor.services.ConsentNotificationProcessor
+import dev.dnpm.etl.processor.services.GicsConsentNotification
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.extension.ExtendWith
+import org.mockito.Mock
+import org.mockito.junit.jupiter.MockitoExtension
+import org.mockito.kotlin.any
+import org.mockito.kotlin.whenever
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.post
+import org.springframework.test.web.servlet.setup.MockMvcBuilders
+
+@ExtendWith(MockitoExtension::class)
+class ConsentNotificationRestControllerTest {
+    private lateinit var mockMvc: MockMvc
+
+    private lateinit var consentNotificationProcessor: ConsentNotificationProcessor
+
+    @BeforeEach
+    fun setup(
+        @Mock consentNotificationProcessor: ConsentNotificationProcessor,
+    ) {
+        this.consentNotificationProcessor = consentNotificationProcessor
+        val controller = ConsentNotificationRestController(consentNotificationProcessor)
+        this.mockMvc = MockMvcBuilders.standaloneSetup(controller).build()
+    }
+
+    @Test
+    fun shouldAcceptNotification() {
+        whenever(consentNotificationProcessor.process(any<GicsConsentNotification>())).thenReturn(listOf(PatientId("P1")))
+
+        mockMvc
+            .post("/api/consent/notification") {
+                content = """{"type": "GICS.AddConsent", "consentKey": {"signerIds": [{"idType": "Patienten-ID", "id": "P1"}]}}"""
+                contentType = MediaType.APPLICATION_JSON
+            }.andExpect { status { isAccepted() } }
+    }
+
+    @Test
+    fun shouldRejectNotificationWithoutPatient() {
+        whenever(consentNotificationProcessor.process(any<GicsConsentNotification>())).thenReturn(listOf())
+
+        mockMvc
+            .post("/api/consent/notification") {
+                content = """{"type": "GICS.AddConsent"}"""
+                contentType = MediaType.APPLICATION_JSON
+            }.andExpect { status { isBadRequest() } }
+    }
+}
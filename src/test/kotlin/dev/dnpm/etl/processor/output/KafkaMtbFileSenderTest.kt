@@ -55,14 +55,14 @@ class KafkaMtbFileSenderTest {
   @Nested
   inner class BwhcV1Record {
 
-    private lateinit var kafkaTemplate: KafkaTemplate<String, String>
+    private lateinit var kafkaTemplate: KafkaTemplate<String, ByteArray>
 
     private lateinit var kafkaMtbFileSender: KafkaMtbFileSender
 
     private lateinit var jsonMapper: JsonMapper
 
     @BeforeEach
-    fun setup(@Mock kafkaTemplate: KafkaTemplate<String, String>) {
+    fun setup(@Mock kafkaTemplate: KafkaTemplate<String, ByteArray>) {
       val kafkaProperties = KafkaProperties("testtopic")
       val retryTemplate = RetryTemplateBuilder().customPolicy(SimpleRetryPolicy(1)).build()
 
@@ -80,10 +80,10 @@ class KafkaMtbFileSenderTest {
             if (null != testData.exception) {
               throw testData.exception
             }
-            completedFuture(SendResult<String, String>(testProducerRecord(), testProducerRecordWithMetadata()))
+            completedFuture(SendResult<String, ByteArray>(testProducerRecord(), testProducerRecordWithMetadata()))
           }
           .whenever(kafkaTemplate)
-          .send(any<ProducerRecord<String, String>>())
+          .send(any<ProducerRecord<String, ByteArray>>())
 
       val response = kafkaMtbFileSender.send(DeleteRequest(TEST_REQUEST_ID, TEST_PATIENT_PSEUDONYM))
       assertThat(response.status).isEqualTo(testData.requestStatus)
@@ -101,10 +101,10 @@ class KafkaMtbFileSenderTest {
             if (null != testData.exception) {
               throw testData.exception
             }
-            completedFuture(SendResult<String, String>(testProducerRecord(), testProducerRecordWithMetadata()))
+            completedFuture(SendResult<String, ByteArray>(testProducerRecord(), testProducerRecordWithMetadata()))
           }
           .whenever(kafkaTemplate)
-          .send(any<ProducerRecord<String, String>>())
+          .send(any<ProducerRecord<String, ByteArray>>())
 
       kafkaMtbFileSender.send(DeleteRequest(TEST_REQUEST_ID, TEST_PATIENT_PSEUDONYM))
 
@@ -116,21 +116,21 @@ class KafkaMtbFileSenderTest {
             else -> times(3)
           }
 
-      verify(kafkaTemplate, expectedCount).send(any<ProducerRecord<String, String>>())
+      verify(kafkaTemplate, expectedCount).send(any<ProducerRecord<String, ByteArray>>())
     }
   }
 
   @Nested
   inner class DnpmV2Record {
 
-    private lateinit var kafkaTemplate: KafkaTemplate<String, String>
+    private lateinit var kafkaTemplate: KafkaTemplate<String, ByteArray>
 
     private lateinit var kafkaMtbFileSender: KafkaMtbFileSender
 
     private lateinit var jsonMapper: JsonMapper
 
     @BeforeEach
-    fun setup(@Mock kafkaTemplate: KafkaTemplate<String, String>) {
+    fun setup(@Mock kafkaTemplate: KafkaTemplate<String, ByteArray>) {
       val kafkaProperties = KafkaProperties("testtopic")
       val retryTemplate = RetryTemplateBuilder().customPolicy(SimpleRetryPolicy(1)).build()
 
@@ -148,10 +148,10 @@ class KafkaMtbFileSenderTest {
             if (null != testData.exception) {
               throw testData.exception
             }
-            completedFuture(SendResult<String, String>(testProducerRecord(), testProducerRecordWithMetadata()))
+            completedFuture(SendResult<String, ByteArray>(testProducerRecord(), testProducerRecordWithMetadata()))
           }
           .whenever(kafkaTemplate)
-          .send(any<ProducerRecord<String, String>>())
+          .send(any<ProducerRecord<String, ByteArray>>())
 
       val response = kafkaMtbFileSender.send(DnpmV2MtbFileRequest(TEST_REQUEST_ID, dnpmV2MtbFile()))
       assertThat(response.status).isEqualTo(testData.requestStatus)
@@ -159,13 +159,13 @@ class KafkaMtbFileSenderTest {
 
     @Test
     fun shouldSendMtbFileRequestWithCorrectKeyAndHeaderAndBody() {
-      doAnswer { completedFuture(SendResult<String, String>(testProducerRecord(), testProducerRecordWithMetadata())) }
+      doAnswer { completedFuture(SendResult<String, ByteArray>(testProducerRecord(), testProducerRecordWithMetadata())) }
           .whenever(kafkaTemplate)
-          .send(any<ProducerRecord<String, String>>())
+          .send(any<ProducerRecord<String, ByteArray>>())
 
       kafkaMtbFileSender.send(DnpmV2MtbFileRequest(TEST_REQUEST_ID, dnpmV2MtbFile()))
 
-      val captor = argumentCaptor<ProducerRecord<String, String>>()
+      val captor = argumentCaptor<ProducerRecord<String, ByteArray>>()
       verify(kafkaTemplate, times(1)).send(captor.capture())
       assertThat(captor.firstValue.key()).isNotNull
       assertThat(captor.firstValue.key()).isEqualTo("{\"pid\": \"PID\"}")
@@ -180,18 +180,34 @@ class KafkaMtbFileSenderTest {
           .isEqualTo("POST".toByteArray())
       assertThat(captor.firstValue.value()).isNotNull
       assertThat(captor.firstValue.value())
-          .isEqualTo(jsonMapper.writeValueAsString(dnmpV2kafkaRecordData(TEST_REQUEST_ID)))
+          .isEqualTo(jsonMapper.writeValueAsBytes(dnmpV2kafkaRecordData(TEST_REQUEST_ID)))
+    }
+
+    @Test
+    fun shouldSendSerializedPayloadAsRecordValue() {
+      doAnswer { completedFuture(SendResult<String, ByteArray>(testProducerRecord(), testProducerRecordWithMetadata())) }
+          .whenever(kafkaTemplate)
+          .send(any<ProducerRecord<String, ByteArray>>())
+
+      val request = DnpmV2MtbFileRequest(TEST_REQUEST_ID, dnpmV2MtbFile()).withPayload(jsonMapper)
+      kafkaMtbFileSender.send(request)
+
+      val captor = argumentCaptor<ProducerRecord<String, ByteArray>>()
+      verify(kafkaTemplate, times(1)).send(captor.capture())
+      assertThat(captor.firstValue.value()).isEqualTo(request.payload?.bytes())
+      assertThat(captor.firstValue.value())
+          .isEqualTo(jsonMapper.writeValueAsBytes(dnmpV2kafkaRecordData(TEST_REQUEST_ID)))
     }
 
     @Test
     fun shouldSendDeleteRequestWithCorrectKeyAndHeaderAndBody() {
-      doAnswer { completedFuture(SendResult<String, String>(testProducerRecord(), testProducerRecordWithMetadata())) }
+      doAnswer { completedFuture(SendResult<String, ByteArray>(testProducerRecord(), testProducerRecordWithMetadata())) }
           .whenever(kafkaTemplate)
-          .send(any<ProducerRecord<String, String>>())
+          .send(any<ProducerRecord<String, ByteArray>>())
 
       kafkaMtbFileSender.send(DeleteRequest(TEST_REQUEST_ID, PatientPseudonym("PID")))
 
-      val captor = argumentCaptor<ProducerRecord<String, String>>()
+      val captor = argumentCaptor<ProducerRecord<String, ByteArray>>()
       verify(kafkaTemplate, times(1)).send(captor.capture())
       assertThat(captor.firstValue.key()).isNotNull
       assertThat(captor.firstValue.key()).isEqualTo("{\"pid\": \"PID\"}")
@@ -219,10 +235,10 @@ class KafkaMtbFileSenderTest {
             if (null != testData.exception) {
               throw testData.exception
             }
-            completedFuture(SendResult<String, String>(testProducerRecord(), testProducerRecordWithMetadata()))
+            completedFuture(SendResult<String, ByteArray>(testProducerRecord(), testProducerRecordWithMetadata()))
           }
           .whenever(kafkaTemplate)
-          .send(any<ProducerRecord<String, String>>())
+          .send(any<ProducerRecord<String, ByteArray>>())
 
       kafkaMtbFileSender.send(DnpmV2MtbFileRequest(TEST_REQUEST_ID, dnpmV2MtbFile()))
 
@@ -234,12 +250,12 @@ class KafkaMtbFileSenderTest {
             else -> times(3)
           }
 
-      verify(kafkaTemplate, expectedCount).send(any<ProducerRecord<String, String>>())
+      verify(kafkaTemplate, expectedCount).send(any<ProducerRecord<String, ByteArray>>())
     }
   }
 
-  fun testProducerRecord(): ProducerRecord<String, String> {
-      return ProducerRecord<String, String>("testtopic", "testkey", "testvalue")
+  fun testProducerRecord(): ProducerRecord<String, ByteArray> {
+      return ProducerRecord<String, ByteArray>("testtopic", "testkey", "testvalue".toByteArray())
   }
 
   fun testProducerRecordWithMetadata(): RecordMetadata {
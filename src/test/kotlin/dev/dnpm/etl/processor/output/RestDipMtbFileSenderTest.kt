@@ -32,6 +32,7 @@ import dev.pcvolkmer.mv64e.mtb.*
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Nested
+import org.junit.jupiter.api.Test
 import org.junit.jupiter.params.ParameterizedTest
 import org.junit.jupiter.params.provider.MethodSource
 import org.springframework.http.HttpHeaders
@@ -97,6 +98,21 @@ class RestDipMtbFileSenderTest {
             assertThat(response.status).isEqualTo(requestWithResponse.response.status)
             assertThat(response.body).isEqualTo(requestWithResponse.response.body)
         }
+
+        @Test
+        fun shouldSendSerializedPayloadAsBody() {
+            val request = DnpmV2MtbFileRequest(TEST_REQUEST_ID, dnpmV2MtbFile()).withPayload(JsonMapper())
+
+            this.mockRestServiceServer
+                .expect(method(HttpMethod.POST))
+                .andExpect(requestTo("http://localhost:9000/api/mtb/etl/patient-record"))
+                .andExpect(content().bytes(request.payload!!.bytes()))
+                .andRespond(withStatus(HttpStatus.OK))
+
+            restMtbFileSender.send(request)
+
+            this.mockRestServiceServer.verify()
+        }
     }
 
     @Nested
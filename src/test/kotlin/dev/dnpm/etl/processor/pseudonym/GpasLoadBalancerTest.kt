@@ -0,0 +1,184 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import dev.dnpm.etl.processor.config.GPasHedgingProperties
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import org.springframework.web.client.ResourceAccessException
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class GpasLoadBalancerTest {
+    private val hedging = GPasHedgingProperties(enabled = true, initialDelay = Duration.ofMillis(50))
+
+    @Test
+    fun shouldUseEndpointWithLeastOutstandingRequests() {
+        GpasLoadBalancer(listOf(NODE_1, NODE_2)).use { loadBalancer ->
+            val blocked = CountDownLatch(1)
+            val started = CountDownLatch(1)
+            val thread =
+                Thread.ofVirtual().start {
+                    loadBalancer.execute(false) {
+                        started.countDown()
+                        blocked.await()
+                    }
+                }
+            started.await(5, TimeUnit.SECONDS)
+
+            val busy = if (loadBalancer.outstandingRequests(NODE_1) == 1) NODE_1 else NODE_2
+            val used = (1..3).map { loadBalancer.execute(false) { it } }
+
+            blocked.countDown()
+            thread.join()
+
+            assertThat(used).doesNotContain(busy)
+        }
+    }
+
+    @Test
+    fun shouldDistributeRequestsEvenly() {
+        GpasLoadBalancer(listOf(NODE_1, NODE_2)).use { loadBalancer ->
+            val used = (1..4).map { loadBalancer.execute(false) { it } }
+
+            assertThat(used.count { it == NODE_1 }).isEqualTo(2)
+            assertThat(used.count { it == NODE_2 }).isEqualTo(2)
+        }
+    }
+
+    @Test
+    fun shouldUseHedgedResponseIfFirstEndpointIsSlow() {
+        GpasLoadBalancer(listOf(NODE_1, NODE_2), hedging).use { loadBalancer ->
+            val slow = CountDownLatch(1)
+            var first: String? = null
+
+            val result =
+                loadBalancer.execute(true) { uri ->
+                    synchronized(this) {
+                        if (null == first) first = uri
+                    }
+                    if (uri == first) {
+                        slow.await(5, TimeUnit.SECONDS)
+                    }
+                    "PSN from $uri"
+                }
+
+            slow.countDown()
+
+            assertThat(result).isNotEqualTo("PSN from $first")
+        }
+    }
+
+    @Test
+    fun shouldInterruptAndReleaseLosingRequest() {
+        GpasLoadBalancer(listOf(NODE_1, NODE_2), hedging).use { loadBalancer ->
+            val interrupted = CountDownLatch(1)
+            var first: String? = null
+
+            loadBalancer.execute(true) { uri ->
+                synchronized(this) {
+                    if (null == first) first = uri
+                }
+                if (uri == first) {
+                    try {
+                        Thread.sleep(5000)
+                    } catch (e: InterruptedException) {
+                        interrupted.countDown()
+                        throw e
+                    }
+                }
+                "PSN from $uri"
+            }
+
+            assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue()
+            // Outstanding request is released in finally block of interrupted request
+            val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+            while (loadBalancer.outstandingRequests(first!!) > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10)
+            }
+            assertThat(loadBalancer.outstandingRequests(NODE_1)).isZero()
+            assertThat(loadBalancer.outstandingRequests(NODE_2)).isZero()
+        }
+    }
+
+    @Test
+    fun shouldNotHedgeNonIdempotentCalls() {
+        GpasLoadBalancer(listOf(NODE_1, NODE_2), hedging).use { loadBalancer ->
+            var calls = 0
+
+            val result =
+                loadBalancer.execute(false) {
+                    calls++
+                    Thread.sleep(100)
+                    "TAN"
+                }
+
+            assertThat(result).isEqualTo("TAN")
+            assertThat(calls).isEqualTo(1)
+        }
+    }
+
+    @Test
+    fun shouldSendRequestToOtherEndpointIfFirstRequestFailsBeforeHedgeDelay() {
+        GpasLoadBalancer(listOf(NODE_1, NODE_2), hedging).use { loadBalancer ->
+            val used = CopyOnWriteArrayList<String>()
+
+            val result =
+                loadBalancer.execute(true) { uri ->
+                    used.add(uri)
+                    if (used.size == 1) {
+                        throw ResourceAccessException("Connection refused")
+                    }
+                    "TAN"
+                }
+
+            assertThat(result).isEqualTo("TAN")
+            assertThat(used).containsExactlyInAnyOrder(NODE_1, NODE_2)
+        }
+    }
+
+    @Test
+    fun shouldThrowExceptionIfAllRequestsFailed() {
+        GpasLoadBalancer(listOf(NODE_1, NODE_2), hedging).use { loadBalancer ->
+            assertThatThrownBy {
+                loadBalancer.execute<String>(true) {
+                    Thread.sleep(100)
+                    throw ResourceAccessException("Connection refused")
+                }
+            }.isInstanceOf(ResourceAccessException::class.java)
+        }
+    }
+
+    @Test
+    fun shouldUseInitialDelayUntilEnoughSamplesRecorded() {
+        GpasLoadBalancer(listOf(NODE_1, NODE_2), hedging).use { loadBalancer ->
+            assertThat(loadBalancer.hedgeDelay()).isEqualTo(Duration.ofMillis(50))
+        }
+    }
+
+    companion object {
+        const val NODE_1 = "https://gpas1.example.com/ttp-fhir/fhir/gpas"
+        const val NODE_2 = "https://gpas2.example.com/ttp-fhir/fhir/gpas"
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import com.sun.net.httpserver.HttpServer
+import dev.dnpm.etl.processor.config.AppConfiguration
+import dev.dnpm.etl.processor.config.AppFhirConfig
+import dev.dnpm.etl.processor.config.GPasConfigProperties
+import dev.dnpm.etl.processor.config.GPasSoapProperties
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import org.apache.cxf.Bus
+import org.apache.cxf.endpoint.Client
+import org.apache.cxf.frontend.ClientProxy
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.params.ParameterizedTest
+import org.junit.jupiter.params.provider.ValueSource
+import org.springframework.retry.support.RetryTemplate
+import org.springframework.retry.support.RetryTemplateBuilder
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.time.Duration
+import java.util.concurrent.Executors
+
+class GpasSoapPseudonymGeneratorTest {
+    private lateinit var server: HttpServer
+    private lateinit var meterRegistry: SimpleMeterRegistry
+    private val clients = mutableListOf<Client>()
+    private val buses = mutableListOf<Bus>()
+
+    private val retryTemplate: RetryTemplate = RetryTemplateBuilder().maxAttempts(1).noBackoff().build()
+
+    @BeforeEach
+    fun setup() {
+        this.meterRegistry = SimpleMeterRegistry()
+        this.server = HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+        this.server.createContext("/gpas/gpasService") { exchange ->
+            val request = exchange.requestBody.readAllBytes().decodeToString()
+            if (request.contains("<value>SLOW</value>")) {
+                Thread.sleep(5000)
+            }
+            val response =
+                if (request.contains("createPseudonymsFor")) {
+                    soapResponse("createPseudonymsForResponse", "<return><psn>TAN_P1</psn></return>")
+                } else {
+                    soapResponse("getOrCreatePseudonymForResponse", "<psn>PSN_P1</psn>")
+                }.toByteArray()
+            exchange.responseHeaders.add("Content-Type", "text/xml; charset=UTF-8")
+            exchange.sendResponseHeaders(200, response.size.toLong())
+            exchange.responseBody.use { it.write(response) }
+        }
+        this.server.executor = Executors.newVirtualThreadPerTaskExecutor()
+        this.server.start()
+    }
+
+    @AfterEach
+    fun tearDown() {
+        clients.forEach { it.destroy() }
+        buses.forEach { it.shutdown(true) }
+        server.stop(0)
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = [true, false])
+    fun shouldGetPseudonymUsingSoapProxy(pooled: Boolean) {
+        val generator = generator(pooled)
+
+        assertThat(generator.generate("P1")).isEqualTo("PSN_P1")
+        assertThat(requestCount("getOrCreatePseudonymFor", "success")).isEqualTo(1)
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = [true, false])
+    fun shouldGetGenomDeTanUsingSoapProxy(pooled: Boolean) {
+        val generator = generator(pooled)
+
+        assertThat(generator.generateGenomDeTan("P1")).isEqualTo("TAN_P1")
+        assertThat(requestCount("createPseudonymsFor", "success")).isEqualTo(1)
+    }
+
+    @Test
+    fun shouldApplyReceiveTimeoutOnPooledConduit() {
+        val generator = generator(true, receiveTimeout = Duration.ofMillis(200))
+
+        val start = System.nanoTime()
+        assertThatThrownBy { generator.generate("SLOW") }.isInstanceOf(Exception::class.java)
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(3))
+        assertThat(requestCount("getOrCreatePseudonymFor", "error")).isEqualTo(1)
+    }
+
+    private fun generator(
+        pooled: Boolean,
+        receiveTimeout: Duration = Duration.ofSeconds(5),
+    ): GpasSoapPseudonymGenerator {
+        val configProperties = configProperties(pooled, receiveTimeout)
+        val appConfiguration = AppConfiguration()
+        val bus = if (pooled) appConfiguration.gpasSoapBus(configProperties).also { buses.add(it) } else null
+        val proxy =
+            appConfiguration.gpasSoapProxy(
+                configProperties,
+                appConfiguration.gpasSoapProxyFactoryBean(configProperties, bus),
+            )
+        clients.add(ClientProxy.getClient(proxy))
+        return GpasSoapPseudonymGenerator(configProperties, retryTemplate, proxy, AppFhirConfig(), meterRegistry)
+    }
+
+    private fun configProperties(
+        pooled: Boolean,
+        receiveTimeout: Duration,
+    ) = GPasConfigProperties(
+        uri = null,
+        soapEndpoint = "http://localhost:${server.address.port}/gpas/gpasService",
+        pidDomain = null,
+        username = null,
+        password = null,
+        soap = GPasSoapProperties(pooled = pooled, connectTimeout = Duration.ofSeconds(1), receiveTimeout = receiveTimeout),
+    )
+
+    private fun requestCount(
+        operation: String,
+        outcome: String,
+    ): Long =
+        meterRegistry
+            .find("etl.gpas.soap.requests")
+            .tag("operation", operation)
+            .tag("outcome", outcome)
+            .timer()
+            ?.count() ?: 0
+
+    private fun soapResponse(
+        name: String,
+        content: String,
+    ) = """
+        <soap:Envelope xmlns:soap="http://schemas.xmlsoap.org/soap/envelope/">
+          <soap:Body>
+            <ns2:$name xmlns:ns2="http://psn.ttp.ganimed.icmvc.emau.org/">$content</ns2:$name>
+          </soap:Body>
+        </soap:Envelope>
+        """.trimIndent()
+}
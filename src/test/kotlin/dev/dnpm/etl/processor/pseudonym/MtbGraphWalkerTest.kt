@@ -0,0 +1,104 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import dev.dnpm.etl.processor.config.JacksonConfig
+import dev.pcvolkmer.mv64e.mtb.Mtb
+import org.apache.commons.codec.digest.DigestUtils
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.extension.ExtendWith
+import org.mockito.Mock
+import org.mockito.junit.jupiter.MockitoExtension
+import org.mockito.kotlin.anyValueClass
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.whenever
+import org.springframework.core.io.ClassPathResource
+import tools.jackson.databind.node.ArrayNode
+import tools.jackson.databind.node.ObjectNode
+import java.util.concurrent.ForkJoinPool
+
+@ExtendWith(MockitoExtension::class)
+class MtbGraphWalkerTest {
+    private val jsonMapper = JacksonConfig().jsonMapper()
+
+    private fun fakeMtbFile(): Mtb {
+        val mtbFile = ClassPathResource("mv64e-mtb-fake-patient.json").inputStream
+        return jsonMapper.readValue(mtbFile, Mtb::class.java)
+    }
+
+    private fun anonymize(id: String): String = "TESTDOMAIN${DigestUtils.sha256Hex(id)}"
+
+    @Test
+    fun shouldHaveSameResultAsSeparateTraversals(
+        @Mock pseudonymizeService: PseudonymizeService,
+    ) {
+        doAnswer { "PSEUDO-ID" }.whenever(pseudonymizeService).patientPseudonym(anyValueClass())
+        doAnswer { "TESTDOMAIN" }.whenever(pseudonymizeService).prefix()
+
+        val expected = fakeMtbFile()
+        expected pseudonymizeWith pseudonymizeService
+        expected anonymizeContentWith pseudonymizeService
+
+        val actual = fakeMtbFile()
+        actual pseudonymizeAndAnonymizeWith pseudonymizeService
+
+        assertThat(jsonMapper.writeValueAsString(actual)).isEqualTo(jsonMapper.writeValueAsString(expected))
+    }
+
+    private fun largeFakeMtbFile(): Mtb {
+        val tree = jsonMapper.readTree(ClassPathResource("mv64e-mtb-fake-patient.json").inputStream)
+        listOf("simpleVariants", "copyNumberVariants").forEach { name ->
+            val variants = tree["ngsReports"][0]["results"][name] as ArrayNode
+            val template = variants[0]
+            (1..2000).forEach { i ->
+                variants.add((template.deepCopy() as ObjectNode).put("id", "$name-$i"))
+            }
+        }
+        return jsonMapper.treeToValue(tree, Mtb::class.java)
+    }
+
+    @Test
+    fun shouldHaveSameResultIfWalkedInParallel() {
+        val expected = largeFakeMtbFile()
+        MtbGraphWalker.DEFAULT.walk(expected, "PSEUDO-ID", ::anonymize)
+
+        val actual = largeFakeMtbFile()
+        ForkJoinPool(4).use { pool ->
+            MtbGraphWalker(pool = pool).walk(actual, "PSEUDO-ID", ::anonymize, parallelThreshold = 1)
+        }
+
+        assertThat(jsonMapper.writeValueAsString(actual)).isEqualTo(jsonMapper.writeValueAsString(expected))
+        assertThat(jsonMapper.writeValueAsString(actual)).doesNotContain("simpleVariants-1\"")
+    }
+
+    @Test
+    fun shouldReportVisitedIdFields() {
+        val coverage = MtbGraphWalker.Coverage()
+
+        MtbGraphWalker.DEFAULT.walk(fakeMtbFile(), "PSEUDO-ID", { "anonymized" }, coverage)
+
+        assertThat(coverage.anonymizedPaths())
+            .contains("diagnoses.id", "ngsReports.results.simpleVariants.id")
+            .doesNotContain("patient.id")
+        assertThat(coverage.unhandledIdPaths()).doesNotContainAnyElementsOf(coverage.anonymizedPaths())
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.pseudonym
+
+import dev.dnpm.etl.processor.PatientId
+import dev.dnpm.etl.processor.config.PseudonymCacheConfigProperties
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.extension.ExtendWith
+import org.mockito.Mock
+import org.mockito.junit.jupiter.MockitoExtension
+import org.mockito.kotlin.any
+import org.mockito.kotlin.anyOrNull
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.doReturn
+import org.mockito.kotlin.doThrow
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import org.springframework.dao.DataAccessResourceFailureException
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+
+@ExtendWith(MockitoExtension::class)
+class PseudonymCacheTest {
+    private val now = Instant.parse("2026-01-01T12:00:00Z")
+
+    @Mock
+    private lateinit var repository: PseudonymCacheRepository
+
+    private lateinit var pseudonymCache: PseudonymCache
+
+    @BeforeEach
+    fun setup() {
+        this.pseudonymCache =
+            PseudonymCache(
+                repository,
+                PseudonymCacheConfigProperties(enabled = true, hmacKey = "secret", ttl = Duration.ofDays(1)),
+                Clock.fixed(now, ZoneOffset.UTC),
+            )
+    }
+
+    @Test
+    fun shouldUseCachedPseudonym() {
+        doAnswer {
+            PseudonymCacheEntry(1, it.arguments[0] as String, "PSEUDO-ID", now.minusSeconds(60))
+        }.whenever(repository).findByPatientIdHash(any())
+
+        val actual = pseudonymCache.getOrCreate(PatientId("123")) { throw IllegalStateException("Must not be called") }
+
+        assertThat(actual).isEqualTo("PSEUDO-ID")
+    }
+
+    @Test
+    fun shouldNotStorePatientId() {
+        doReturn(null).whenever(repository).findByPatientIdHash(any())
+        doAnswer { it.arguments[0] }.whenever(repository).save(any<PseudonymCacheEntry>())
+
+        pseudonymCache.getOrCreate(PatientId("123")) { "PSEUDO-ID" }
+
+        val captor = argumentCaptor<PseudonymCacheEntry>()
+        verify(repository, times(1)).save(captor.capture())
+        assertThat(captor.firstValue.patientIdHash).hasSize(64).isNotEqualTo("123")
+        assertThat(captor.firstValue.pseudonym).isEqualTo("PSEUDO-ID")
+    }
+
+    @Test
+    fun shouldUseNearCacheForSubsequentCalls() {
+        doReturn(null).whenever(repository).findByPatientIdHash(any())
+        doAnswer { it.arguments[0] }.whenever(repository).save(any<PseudonymCacheEntry>())
+
+        var calls = 0
+        repeat(3) { pseudonymCache.getOrCreate(PatientId("123")) { "PSEUDO-ID-${++calls}" } }
+
+        assertThat(calls).isEqualTo(1)
+        verify(repository, times(1)).findByPatientIdHash(any())
+    }
+
+    @Test
+    fun shouldRefreshExpiredEntry() {
+        doAnswer {
+            PseudonymCacheEntry(1, it.arguments[0] as String, "OLD-PSEUDO-ID", now.minus(Duration.ofDays(2)))
+        }.whenever(repository).findByPatientIdHash(any())
+        doAnswer { it.arguments[0] }.whenever(repository).save(any<PseudonymCacheEntry>())
+
+        val actual = pseudonymCache.getOrCreate(PatientId("123")) { "PSEUDO-ID" }
+
+        assertThat(actual).isEqualTo("PSEUDO-ID")
+        val captor = argumentCaptor<PseudonymCacheEntry>()
+        verify(repository, times(1)).save(captor.capture())
+        assertThat(captor.firstValue.id).isEqualTo(1)
+        assertThat(captor.firstValue.createdAt).isEqualTo(now)
+    }
+
+    @Test
+    fun shouldUseGeneratorIfCacheNotAvailable() {
+        doThrow(DataAccessResourceFailureException("Database not available"))
+            .whenever(repository)
+            .findByPatientIdHash(any())
+        doThrow(DataAccessResourceFailureException("Database not available"))
+            .whenever(repository)
+            .save(anyOrNull<PseudonymCacheEntry>())
+
+        val actual = pseudonymCache.getOrCreate(PatientId("123")) { "PSEUDO-ID" }
+
+        assertThat(actual).isEqualTo("PSEUDO-ID")
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.resilience
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.springframework.http.HttpStatus
+import org.springframework.retry.RetryContext
+import org.springframework.retry.backoff.BackOffContext
+import org.springframework.retry.backoff.BackOffPolicy
+import org.springframework.retry.policy.SimpleRetryPolicy
+import org.springframework.retry.support.RetryTemplate
+import org.springframework.web.client.HttpClientErrorException
+import org.springframework.web.client.ResourceAccessException
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+
+class CircuitBreakerTest {
+    private lateinit var clock: MutableClock
+    private lateinit var circuitBreaker: CircuitBreaker
+    private lateinit var retryTemplate: RetryTemplate
+
+    @BeforeEach
+    fun setup() {
+        this.clock = MutableClock(Instant.parse("2026-01-01T12:00:00Z"))
+        this.circuitBreaker = CircuitBreaker("test", 3, Duration.ofSeconds(30), 2, clock)
+        this.retryTemplate =
+            CircuitBreakerRetryTemplate(circuitBreaker).apply {
+                setRetryPolicy(circuitBreaker.retryPolicy(SimpleRetryPolicy(5)))
+            }
+    }
+
+    private fun failingCall(): String = retryTemplate.execute<String, Exception> { throw ResourceAccessException("Connection refused") }
+
+    private fun successfulCall(): String = retryTemplate.execute<String, Exception> { "OK" }
+
+    @Test
+    fun shouldStopRetryingAndOpenAfterConsecutiveFailures() {
+        var attempts = 0
+
+        assertThatThrownBy {
+            retryTemplate.execute<String, Exception> {
+                attempts++
+                throw ResourceAccessException("Connection refused")
+            }
+        }.isInstanceOf(ResourceAccessException::class.java)
+
+        assertThat(attempts).isEqualTo(3)
+        assertThat(circuitBreaker.state).isEqualTo(CircuitBreaker.State.OPEN)
+    }
+
+    @Test
+    fun shouldFailFastIfOpen() {
+        assertThatThrownBy { failingCall() }.isInstanceOf(ResourceAccessException::class.java)
+
+        var called = false
+        assertThatThrownBy {
+            retryTemplate.execute<String, Exception> {
+                called = true
+                "OK"
+            }
+        }.isInstanceOf(CallNotPermittedException::class.java)
+
+        assertThat(called).isFalse()
+        assertThat(circuitBreaker.rejectedCalls()).isEqualTo(1)
+        assertThat(circuitBreaker.availableConcurrentCalls()).isEqualTo(2)
+    }
+
+    @Test
+    fun shouldCloseAfterSuccessfulTrialCall() {
+        assertThatThrownBy { failingCall() }.isInstanceOf(ResourceAccessException::class.java)
+
+        clock.advance(Duration.ofSeconds(31))
+
+        assertThat(successfulCall()).isEqualTo("OK")
+        assertThat(circuitBreaker.state).isEqualTo(CircuitBreaker.State.CLOSED)
+    }
+
+    @Test
+    fun shouldOpenAgainAfterFailedTrialCall() {
+        assertThatThrownBy { failingCall() }.isInstanceOf(ResourceAccessException::class.java)
+
+        clock.advance(Duration.ofSeconds(31))
+
+        assertThatThrownBy { failingCall() }.isInstanceOf(ResourceAccessException::class.java)
+        assertThat(circuitBreaker.state).isEqualTo(CircuitBreaker.State.OPEN)
+        assertThatThrownBy { successfulCall() }.isInstanceOf(CallNotPermittedException::class.java)
+    }
+
+    @Test
+    fun shouldNotCountClientErrorsAsFailure() {
+        repeat(5) {
+            assertThatThrownBy {
+                retryTemplate.execute<String, Exception> {
+                    throw HttpClientErrorException(HttpStatus.BAD_REQUEST)
+                }
+            }.isInstanceOf(HttpClientErrorException::class.java)
+        }
+
+        assertThat(circuitBreaker.state).isEqualTo(CircuitBreaker.State.CLOSED)
+    }
+
+    @Test
+    fun shouldRejectCallsExceedingBulkhead() {
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue()
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue()
+        assertThat(circuitBreaker.tryAcquirePermission()).isFalse()
+
+        circuitBreaker.release(true)
+
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue()
+        assertThat(circuitBreaker.rejectedCalls()).isEqualTo(1)
+    }
+
+    @Test
+    fun shouldNotHoldPermitWhileBackingOff() {
+        val availableWhileBackingOff = mutableListOf<Int>()
+        retryTemplate.setBackOffPolicy(
+            backOffPolicy { availableWhileBackingOff.add(circuitBreaker.availableConcurrentCalls()) }
+        )
+
+        var attempts = 0
+        val result =
+            retryTemplate.execute<String, Exception> {
+                if (++attempts < 3) {
+                    throw ResourceAccessException("Connection refused")
+                }
+                "OK"
+            }
+
+        assertThat(result).isEqualTo("OK")
+        assertThat(availableWhileBackingOff).containsExactly(2, 2)
+        assertThat(circuitBreaker.availableConcurrentCalls()).isEqualTo(2)
+    }
+
+    @Test
+    fun shouldRetryAttemptsRejectedByBulkhead() {
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue()
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue()
+        retryTemplate.setBackOffPolicy(backOffPolicy { circuitBreaker.release(true) })
+
+        var attempts = 0
+        val result =
+            retryTemplate.execute<String, Exception> {
+                attempts++
+                "OK"
+            }
+
+        assertThat(result).isEqualTo("OK")
+        assertThat(attempts).isEqualTo(1)
+        assertThat(circuitBreaker.rejectedCalls()).isEqualTo(1)
+        assertThat(circuitBreaker.failedCalls()).isEqualTo(0)
+    }
+
+    @Test
+    fun shouldReportRejectedCallsIfBulkheadStaysFull() {
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue()
+        assertThat(circuitBreaker.tryAcquirePermission()).isTrue()
+
+        assertThatThrownBy { successfulCall() }.isInstanceOf(CallNotPermittedException::class.java)
+
+        assertThat(circuitBreaker.rejectedCalls()).isEqualTo(5)
+        assertThat(circuitBreaker.state).isEqualTo(CircuitBreaker.State.CLOSED)
+    }
+
+    @Test
+    fun shouldNotLimitConcurrentCallsIfBulkheadDisabled() {
+        val circuitBreaker = CircuitBreaker("test", 3, Duration.ofSeconds(30), 0, clock)
+
+        repeat(100) { assertThat(circuitBreaker.tryAcquirePermission()).isTrue() }
+
+        assertThat(circuitBreaker.isBulkheadEnabled()).isFalse()
+        assertThat(circuitBreaker.rejectedCalls()).isEqualTo(0)
+    }
+
+    private fun backOffPolicy(onBackOff: () -> Unit): BackOffPolicy =
+        object : BackOffPolicy {
+            override fun start(context: RetryContext?): BackOffContext? = null
+
+            override fun backOff(backOffContext: BackOffContext?) = onBackOff()
+        }
+
+    private class MutableClock(
+        private var instant: Instant,
+    ) : Clock() {
+        fun advance(duration: Duration) {
+            instant = instant.plus(duration)
+        }
+
+        override fun instant(): Instant = instant
+
+        override fun getZone(): ZoneId = ZoneOffset.UTC
+
+        override fun withZone(zone: ZoneId): Clock = this
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+
+class ConcurrentLookupsTest {
+    private val concurrentLookups = ConcurrentLookups(Executors.newVirtualThreadPerTaskExecutor())
+
+    @AfterEach
+    fun tearDown() {
+        concurrentLookups.close()
+    }
+
+    @Test
+    fun shouldRunLookupsConcurrently() {
+        val latch = CountDownLatch(3)
+
+        val result =
+            concurrentLookups.scope {
+                // Each lookup only completes if all lookups are running at the same time
+                val lookups =
+                    (1..3).map { i ->
+                        fork {
+                            latch.countDown()
+                            latch.await(5, TimeUnit.SECONDS)
+                            i
+                        }
+                    }
+                joinAll()
+                lookups.sumOf { it.result() }
+            }
+
+        assertThat(latch.count).isZero()
+        assertThat(result).isEqualTo(6)
+    }
+
+    @Test
+    fun shouldCancelRemainingLookupsOnFailure() {
+        val blocked = CountDownLatch(1)
+
+        assertThatThrownBy {
+            concurrentLookups.scope {
+                val slow = fork { blocked.await() }
+                fork { throw IllegalStateException("gPAS not available") }
+                try {
+                    joinAll()
+                } finally {
+                    assertThat(slow.isCancelled).isTrue()
+                }
+            }
+        }.isInstanceOf(IllegalStateException::class.java)
+            .hasMessage("gPAS not available")
+    }
+
+    @Test
+    fun shouldRunLookupsOnCallingThread() {
+        val thread =
+            ConcurrentLookups.SAME_THREAD.scope {
+                val lookup = fork { Thread.currentThread() }
+                joinAll()
+                lookup.result()
+            }
+
+        assertThat(thread).isSameAs(Thread.currentThread())
+    }
+}
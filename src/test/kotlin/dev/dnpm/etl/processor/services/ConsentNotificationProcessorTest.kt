@@ -0,0 +1,87 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import dev.dnpm.etl.processor.PatientId
+import dev.dnpm.etl.processor.config.ConsentNotificationConfigProperties
+import dev.dnpm.etl.processor.config.JacksonConfig
+import dev.dnpm.etl.processor.consent.ConsentCache
+import dev.dnpm.etl.processor.consent.TtpConsentStatus
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.Test
+import java.time.Duration
+
+class ConsentNotificationProcessorTest {
+    private val jsonMapper = JacksonConfig().jsonMapper()
+
+    @Test
+    fun shouldInvalidateConsentCacheEntriesOfNotifiedPatient() {
+        val consentCache = ConsentCache(Duration.ofDays(1), 100)
+        consentCache.put(ConsentCache.Key.broadConsentStatus("P1"), TtpConsentStatus.BROAD_CONSENT_MISSING)
+        consentCache.put(ConsentCache.Key.broadConsentStatus("P2"), TtpConsentStatus.BROAD_CONSENT_MISSING)
+
+        val patientIds = processor(consentCache).process(notification(NOTIFICATION))
+
+        assertThat(patientIds).containsExactly(PatientId("P1"))
+        assertThat(consentCache.get(ConsentCache.Key.broadConsentStatus("P1"), TtpConsentStatus::class.java)).isNull()
+        assertThat(consentCache.get(ConsentCache.Key.broadConsentStatus("P2"), TtpConsentStatus::class.java)).isNotNull()
+    }
+
+    @Test
+    fun shouldIgnoreOtherIdentifierTypes() {
+        val notification = notification(NOTIFICATION.replace("Patienten-ID", "Fall-ID"))
+
+        assertThat(processor(null).process(notification)).isEmpty()
+    }
+
+    @Test
+    fun shouldAcceptFullIdentifierSystem() {
+        val notification =
+            notification(NOTIFICATION.replace("Patienten-ID", "https://ths-greifswald.de/fhir/gics/identifiers/Patienten-ID"))
+
+        assertThat(processor(null).process(notification)).containsExactly(PatientId("P1"))
+    }
+
+    private fun processor(consentCache: ConsentCache?) =
+        ConsentNotificationProcessor(
+            "https://ths-greifswald.de/fhir/gics/identifiers/Patienten-ID",
+            ConsentNotificationConfigProperties(enabled = true),
+            consentCache,
+            null,
+            null,
+        )
+
+    private fun notification(json: String) = jsonMapper.readValue(json, GicsConsentNotification::class.java)
+
+    companion object {
+        const val NOTIFICATION = """
+            {
+              "type": "GICS.AddConsent",
+              "clientId": "gICS_Web",
+              "consentKey": {
+                "consentTemplateKey": { "domainName": "MII", "name": "Patienteneinwilligung MII", "version": "1.6.d" },
+                "signerIds": [ { "idType": "Patienten-ID", "id": "P1", "orderNumber": 1 } ],
+                "consentDate": "2026-01-01 10:00:00"
+              }
+            }
+        """
+    }
+}
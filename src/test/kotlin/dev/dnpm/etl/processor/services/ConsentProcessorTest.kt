@@ -225,6 +225,33 @@ class ConsentProcessorTest {
         .isEqualTo(Consent.ConsentProvisionType.NULL)
   }
 
+  @Test
+  fun embedBroadConsentResourcesLikeJsonStringConversion() {
+    val bundle = getDummyBroadConsentBundle()
+    val inputMtb =
+        Mtb.builder()
+            .patient(Patient.builder().id("d611d429-5003-11f0-a144-661e92ac9503").build())
+            .metadata(MvhMetadata.builder().researchConsents(mutableListOf()).build())
+            .build()
+
+    consentProcessor.embedBroadConsentResources(inputMtb, bundle)
+
+    val expected =
+        bundle.entry
+            .map { it.resource }
+            .filterIsInstance<Consent>()
+            .map {
+              jsonMapper.readValue(
+                  fhirContext.newJsonParser().encodeResourceToString(it),
+                  MvhMetadata.ResearchConsent::class.java,
+              )
+            }
+    assertThat(inputMtb.metadata.researchConsents).isNotEmpty
+    assertThat(inputMtb.metadata.researchConsents).isEqualTo(expected)
+    assertThat(jsonMapper.writeValueAsString(inputMtb.metadata.researchConsents))
+        .isEqualTo(jsonMapper.writeValueAsString(expected))
+  }
+
   fun getDummyBroadConsentBundle(): Bundle {
     val bundle: InputStream?
     try {
@@ -0,0 +1,284 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import dev.dnpm.etl.processor.PatientId
+import dev.dnpm.etl.processor.PatientPseudonym
+import dev.dnpm.etl.processor.RequestId
+import dev.dnpm.etl.processor.config.ConsentRecheckConfigProperties
+import dev.dnpm.etl.processor.config.JacksonConfig
+import dev.dnpm.etl.processor.consent.TtpConsentStatus
+import dev.dnpm.etl.processor.monitoring.RequestRepository
+import org.apache.kafka.clients.producer.ProducerRecord
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.extension.ExtendWith
+import org.mockito.Mock
+import org.mockito.junit.jupiter.MockitoExtension
+import org.mockito.kotlin.any
+import org.mockito.kotlin.argThat
+import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.doAnswer
+import org.mockito.kotlin.never
+import org.mockito.kotlin.times
+import org.mockito.kotlin.verify
+import org.mockito.kotlin.whenever
+import org.springframework.kafka.core.KafkaTemplate
+import org.springframework.kafka.support.SendResult
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicReference
+
+@ExtendWith(MockitoExtension::class)
+class ConsentRecheckServiceTest {
+    private val clock = Clock.fixed(Instant.parse("2026-01-01T02:00:00Z"), ZoneOffset.UTC)
+    private val configProperties =
+        ConsentRecheckConfigProperties(enabled = true, delay = Duration.ZERO, topic = "reexport", secret = "secret")
+    private val patientIdCipher = PatientIdCipher("secret")
+
+    private lateinit var repository: ConsentRecheckRepository
+    private lateinit var requestRepository: RequestRepository
+    private lateinit var consentProcessor: ConsentProcessor
+    private lateinit var kafkaTemplate: KafkaTemplate<String, ByteArray>
+
+    @BeforeEach
+    fun setup(
+        @Mock repository: ConsentRecheckRepository,
+        @Mock requestRepository: RequestRepository,
+        @Mock consentProcessor: ConsentProcessor,
+        @Mock kafkaTemplate: KafkaTemplate<String, ByteArray>,
+    ) {
+        this.repository = repository
+        this.requestRepository = requestRepository
+        this.consentProcessor = consentProcessor
+        this.kafkaTemplate = kafkaTemplate
+    }
+
+    private fun service(kafkaTemplate: KafkaTemplate<String, ByteArray>? = this.kafkaTemplate) =
+        ConsentRecheckService(
+            repository,
+            requestRepository,
+            consentProcessor,
+            configProperties,
+            JacksonConfig().jsonMapper(),
+            kafkaTemplate,
+            clock,
+        )
+
+    @Test
+    fun shouldRegisterPatient() {
+        service().register(
+            PatientId("P1"),
+            PatientPseudonym("PSN_P1"),
+            RequestId("a0000000-0000-0000-0000-000000000001"),
+            TtpConsentStatus.BROAD_CONSENT_MISSING_OR_REJECTED,
+        )
+
+        val captor = argumentCaptor<ConsentRecheckEntry>()
+        verify(repository).save(captor.capture())
+        assertThat(captor.firstValue.patientIdHash).isEqualTo(patientIdCipher.hash(PatientId("P1")))
+        assertThat(captor.firstValue.encryptedPatientId).doesNotContain("P1")
+        assertThat(patientIdCipher.decrypt(captor.firstValue.encryptedPatientId)).isEqualTo(PatientId("P1"))
+        assertThat(captor.firstValue.patientPseudonym).isEqualTo("PSN_P1")
+        assertThat(captor.firstValue.createdAt).isEqualTo(clock.instant())
+    }
+
+    @Test
+    fun shouldPublishReexportRequestIfConsentChanged() {
+        val entry = entry("P1")
+        whenever(requestRepository.findPatientPseudonymsForConsentRecheck()).thenReturn(listOf(entry.patientPseudonym))
+        whenever(repository.findAll()).thenReturn(listOf(entry))
+        whenever(repository.findByPatientPseudonym(entry.patientPseudonym)).thenReturn(entry)
+        whenever(consentProcessor.checkAndTryEmbedding(argThat { patient.id == "P1" })).thenReturn(ConsentCheckResult(true))
+        whenever(kafkaTemplate.send(any<ProducerRecord<String, ByteArray>>()))
+            .thenReturn(CompletableFuture.completedFuture<SendResult<String, ByteArray>>(null))
+
+        val service = service()
+        service.recheck()
+
+        val captor = argumentCaptor<ProducerRecord<String, ByteArray>>()
+        verify(kafkaTemplate).send(captor.capture())
+        assertThat(captor.firstValue.topic()).isEqualTo("reexport")
+        assertThat(captor.firstValue.key()).isEqualTo("{\"pid\":\"PSN_P1\"}")
+        assertThat(captor.firstValue.value().decodeToString()).contains("\"patientPseudonym\":\"PSN_P1\"")
+        assertThat(captor.firstValue.value().decodeToString()).doesNotContain("\"P1\"")
+        verify(repository).delete(entry)
+        assertThat(service.lastRun).isEqualTo(RecheckRun(clock.instant(), 1, 1))
+    }
+
+    @Test
+    fun shouldNotPublishReexportRequestIfConsentUnchanged() {
+        val entry = entry("P1")
+        whenever(requestRepository.findPatientPseudonymsForConsentRecheck()).thenReturn(listOf(entry.patientPseudonym))
+        whenever(repository.findAll()).thenReturn(listOf(entry))
+        whenever(repository.findByPatientPseudonym(entry.patientPseudonym)).thenReturn(entry)
+        whenever(consentProcessor.checkAndTryEmbedding(argThat { patient.id == "P1" })).thenReturn(ConsentCheckResult(false))
+
+        service().recheck()
+
+        verify(kafkaTemplate, never()).send(any<ProducerRecord<String, ByteArray>>())
+        verify(repository).save(entry.copy(checkedAt = clock.instant()))
+    }
+
+    @Test
+    fun shouldListPatientIfNoTopicConfigured() {
+        val entry = entry("P1")
+        whenever(requestRepository.findPatientPseudonymsForConsentRecheck()).thenReturn(listOf(entry.patientPseudonym))
+        whenever(repository.findAll()).thenReturn(listOf(entry))
+        whenever(repository.findByPatientPseudonym(entry.patientPseudonym)).thenReturn(entry)
+        whenever(consentProcessor.checkAndTryEmbedding(argThat { patient.id == "P1" })).thenReturn(ConsentCheckResult(true))
+
+        service(null).recheck()
+
+        verify(repository).save(
+            entry.copy(
+                consentStatus = TtpConsentStatus.BROAD_CONSENT_GIVEN,
+                checkedAt = clock.instant(),
+                consentGivenAt = clock.instant(),
+            ),
+        )
+    }
+
+    @Test
+    fun shouldRemovePatientsWithNewerRequest() {
+        val superseded = entry("P1")
+        val pending = entry("P2")
+        whenever(requestRepository.findPatientPseudonymsForConsentRecheck()).thenReturn(listOf(pending.patientPseudonym))
+        whenever(repository.findAll()).thenReturn(listOf(superseded, pending))
+        whenever(repository.findByPatientPseudonym(pending.patientPseudonym)).thenReturn(pending)
+        whenever(consentProcessor.checkAndTryEmbedding(argThat { patient.id == "P2" }))
+            .thenThrow(IllegalStateException("gICS not available"))
+
+        service().recheck()
+
+        verify(repository).deleteAll(listOf(superseded))
+        verify(consentProcessor, never()).checkAndTryEmbedding(argThat { patient.id == "P1" })
+    }
+
+    @Test
+    fun shouldNotUseLastKnownConsent() {
+        val entry = entry("P1")
+        whenever(requestRepository.findPatientPseudonymsForConsentRecheck()).thenReturn(listOf(entry.patientPseudonym))
+        whenever(repository.findAll()).thenReturn(listOf(entry))
+        whenever(repository.findByPatientPseudonym(entry.patientPseudonym)).thenReturn(entry)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true, stale = true))
+
+        service().recheck()
+
+        verify(kafkaTemplate, never()).send(any<ProducerRecord<String, ByteArray>>())
+        verify(repository, never()).save(any<ConsentRecheckEntry>())
+    }
+
+    @Test
+    fun shouldRunScheduledRecheckOnSeparateThread() {
+        val latch = CountDownLatch(1)
+        val threadName = AtomicReference<String>()
+        whenever(requestRepository.findPatientPseudonymsForConsentRecheck()).thenAnswer {
+            threadName.set(Thread.currentThread().name)
+            latch.countDown()
+            listOf<String>()
+        }
+
+        service().use {
+            it.scheduleRecheck()
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue
+        }
+
+        assertThat(threadName.get()).isEqualTo("consent-recheck")
+    }
+
+    @Test
+    fun shouldRecheckNotifiedPatientOnBoundedExecutor() {
+        val latch = CountDownLatch(1)
+        val threadName = AtomicReference<String>()
+        whenever(repository.findAllByPatientIdHash(patientIdCipher.hash(PatientId("P1")))).thenReturn(listOf(entry("P1")))
+        whenever(repository.findByPatientPseudonym("PSN_P1")).thenReturn(entry("P1"))
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenAnswer {
+            threadName.set(Thread.currentThread().name)
+            latch.countDown()
+            ConsentCheckResult(true, stale = true)
+        }
+
+        service().use {
+            assertThat(it.recheck(PatientId("P1"))).isTrue
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue
+        }
+
+        assertThat(threadName.get()).startsWith("consent-recheck-notification-")
+    }
+
+    @Test
+    fun shouldNotCheckPatientConcurrently() {
+        val entry = entry("P1")
+        val stored = AtomicReference(entry)
+        val started = CountDownLatch(1)
+        whenever(requestRepository.findPatientPseudonymsForConsentRecheck()).thenReturn(listOf(entry.patientPseudonym))
+        whenever(repository.findAll()).thenReturn(listOf(entry))
+        whenever(repository.findAllByPatientIdHash(entry.patientIdHash)).thenReturn(listOf(entry))
+        whenever(repository.findByPatientPseudonym(entry.patientPseudonym)).thenAnswer { stored.get() }
+        doAnswer { stored.set(null) }.whenever(repository).delete(entry)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenAnswer {
+            started.countDown()
+            Thread.sleep(100)
+            ConsentCheckResult(true)
+        }
+        whenever(kafkaTemplate.send(any<ProducerRecord<String, ByteArray>>()))
+            .thenReturn(CompletableFuture.completedFuture<SendResult<String, ByteArray>>(null))
+
+        service().use {
+            assertThat(it.recheck(PatientId("P1"))).isTrue
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue
+            it.recheck()
+
+            assertThat(it.lastRun).isEqualTo(RecheckRun(clock.instant(), 1, 0))
+        }
+
+        verify(kafkaTemplate, times(1)).send(any<ProducerRecord<String, ByteArray>>())
+        verify(consentProcessor, times(1)).checkAndTryEmbedding(any())
+    }
+
+    @Test
+    fun shouldNotRecheckUnregisteredPatient() {
+        whenever(repository.findAllByPatientIdHash(any())).thenReturn(listOf())
+
+        service().use {
+            assertThat(it.recheck(PatientId("P1"))).isFalse
+        }
+
+        verify(consentProcessor, never()).checkAndTryEmbedding(any())
+    }
+
+    private fun entry(patientId: String) =
+        ConsentRecheckEntry(
+            patientPseudonym = "PSN_$patientId",
+            patientIdHash = patientIdCipher.hash(PatientId(patientId)),
+            encryptedPatientId = patientIdCipher.encrypt(PatientId(patientId)),
+            requestUuid = "a0000000-0000-0000-0000-000000000001",
+            consentStatus = TtpConsentStatus.BROAD_CONSENT_MISSING_OR_REJECTED,
+            createdAt = clock.instant(),
+        )
+}
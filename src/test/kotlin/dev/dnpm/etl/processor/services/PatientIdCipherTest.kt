@@ -0,0 +1,60 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2025-2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package dev.dnpm.etl.processor.services
+
+import dev.dnpm.etl.processor.PatientId
+import org.assertj.core.api.Assertions.assertThat
+import org.assertj.core.api.Assertions.assertThatThrownBy
+import org.junit.jupiter.api.Test
+import java.security.GeneralSecurityException
+
+class PatientIdCipherTest {
+    private val patientIdCipher = PatientIdCipher("secret")
+
+    @Test
+    fun shouldEncryptAndDecryptPatientId() {
+        val encrypted = patientIdCipher.encrypt(PatientId("P1"))
+
+        assertThat(encrypted).doesNotContain("P1")
+        assertThat(encrypted).isNotEqualTo(patientIdCipher.encrypt(PatientId("P1")))
+        assertThat(patientIdCipher.decrypt(encrypted)).isEqualTo(PatientId("P1"))
+    }
+
+    @Test
+    fun shouldNotDecryptUsingOtherSecret() {
+        val encrypted = patientIdCipher.encrypt(PatientId("P1"))
+
+        assertThatThrownBy { PatientIdCipher("other").decrypt(encrypted) }
+            .isInstanceOf(GeneralSecurityException::class.java)
+    }
+
+    @Test
+    fun shouldUseKeyedHash() {
+        assertThat(patientIdCipher.hash(PatientId("P1"))).isEqualTo(patientIdCipher.hash(PatientId("P1")))
+        assertThat(patientIdCipher.hash(PatientId("P1"))).isNotEqualTo(PatientIdCipher("other").hash(PatientId("P1")))
+    }
+
+    @Test
+    fun shouldRequireSecret() {
+        assertThatThrownBy { PatientIdCipher(" ") }.isInstanceOf(IllegalArgumentException::class.java)
+    }
+}
@@ -22,6 +22,7 @@ package dev.dnpm.etl.processor.services
 
 import dev.dnpm.etl.processor.*
 import dev.dnpm.etl.processor.config.AppConfigProperties
+import dev.dnpm.etl.processor.config.JacksonConfig
 import dev.dnpm.etl.processor.consent.TtpConsentStatus
 import dev.dnpm.etl.processor.monitoring.Request
 import dev.dnpm.etl.processor.monitoring.RequestStatus
@@ -32,7 +33,11 @@ import dev.dnpm.etl.processor.output.DnpmV2MtbFileRequest
 import dev.dnpm.etl.processor.output.MtbFileSender
 import dev.dnpm.etl.processor.output.RestMtbFileSender
 import dev.dnpm.etl.processor.pseudonym.PseudonymizeService
+import dev.dnpm.etl.processor.resilience.CallNotPermittedException
+import dev.dnpm.etl.processor.resilience.CircuitBreaker
 import dev.pcvolkmer.mv64e.mtb.*
+import org.apache.commons.codec.binary.Base32
+import org.apache.commons.codec.digest.DigestUtils
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Nested
@@ -43,7 +48,9 @@ import org.mockito.Mockito.*
 import org.mockito.junit.jupiter.MockitoExtension
 import org.mockito.kotlin.any
 import org.mockito.kotlin.anyValueClass
+import org.mockito.kotlin.anyOrNull
 import org.mockito.kotlin.argumentCaptor
+import org.mockito.kotlin.eq
 import org.mockito.kotlin.whenever
 import org.springframework.context.ApplicationEventPublisher
 import tools.jackson.databind.json.JsonMapper
@@ -121,9 +128,9 @@ class RequestProcessorTest {
             .whenever(pseudonymizeService)
             .patientPseudonym(anyValueClass())
 
-        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
-        whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
         val mtbFile =
             Mtb.builder()
@@ -151,6 +158,130 @@ class RequestProcessorTest {
         assertThat(requestCaptor.firstValue.status).isEqualTo(RequestStatus.UNKNOWN)
     }
 
+    @Test
+    fun testShouldSaveRequestWithStaleConsent() {
+        doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
+            .whenever(sender)
+            .send(any<DnpmV2MtbFileRequest>())
+
+        doAnswer { it.arguments[0] as String }
+            .whenever(pseudonymizeService)
+            .patientPseudonym(anyValueClass())
+
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
+
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true, stale = true))
+
+        val mtbFile =
+            Mtb.builder()
+                .patient(Patient.builder().id("123").build())
+                .build()
+
+        this.requestProcessor.processMtbFile(mtbFile)
+
+        val requestCaptor = argumentCaptor<Request>()
+        verify(requestService, times(1)).save(requestCaptor.capture())
+        assertThat(requestCaptor.firstValue.consentStale).isTrue
+    }
+
+    @Test
+    fun testShouldSaveRequestWithFingerprintOfJsonContent() {
+        doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
+            .whenever(sender)
+            .send(any<DnpmV2MtbFileRequest>())
+
+        doAnswer { it.arguments[0] as String }
+            .whenever(pseudonymizeService)
+            .patientPseudonym(anyValueClass())
+
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
+
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
+
+        val mtbFile =
+            Mtb.builder()
+                .patient(Patient.builder().id("123").build())
+                .diagnoses(listOf(MtbDiagnosis.builder().id("1234").build()))
+                .build()
+
+        this.requestProcessor.processMtbFile(mtbFile)
+
+        val expectedFingerprint =
+            Base32().encodeAsString(DigestUtils.sha256(jsonMapper.writeValueAsString(mtbFile)))
+                .replace("=", "")
+                .lowercase()
+        val requestCaptor = argumentCaptor<Request>()
+        verify(requestService, times(1)).save(requestCaptor.capture())
+        assertThat(requestCaptor.firstValue.fingerprint).isEqualTo(Fingerprint(expectedFingerprint))
+    }
+
+    @Test
+    fun testShouldSendSerializedPayloadUsedForFingerprint() {
+        doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
+            .whenever(sender)
+            .send(any<DnpmV2MtbFileRequest>())
+
+        doAnswer { it.arguments[0] as String }
+            .whenever(pseudonymizeService)
+            .patientPseudonym(anyValueClass())
+
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
+
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
+
+        val mtbFile =
+            Mtb.builder()
+                .patient(Patient.builder().id("123").build())
+                .build()
+
+        this.requestProcessor.processMtbFile(mtbFile)
+
+        val sendRequestCaptor = argumentCaptor<DnpmV2MtbFileRequest>()
+        verify(sender, times(1)).send(sendRequestCaptor.capture())
+        val payload = sendRequestCaptor.firstValue.payload
+        assertThat(payload).isNotNull
+        assertThat(payload?.bytes()).isEqualTo(jsonMapper.writeValueAsBytes(mtbFile))
+
+        val requestCaptor = argumentCaptor<Request>()
+        verify(requestService, times(1)).save(requestCaptor.capture())
+        assertThat(requestCaptor.firstValue.fingerprint).isEqualTo(
+            Fingerprint(Base32().encodeAsString(payload?.sha256()).replace("=", "").lowercase())
+        )
+    }
+
+    @Test
+    fun testShouldSaveRequestWithTransformationVersion() {
+        doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
+            .whenever(sender)
+            .send(any<DnpmV2MtbFileRequest>())
+
+        doAnswer { it.arguments[0] as String }
+            .whenever(pseudonymizeService)
+            .patientPseudonym(anyValueClass())
+
+        val transformationRules =
+            TransformationService(
+                JacksonConfig().jsonMapper(),
+                listOf(Transformation.of("diagnoses[*].code.version") from "2013" to "2014"),
+            ).currentRules()
+        whenever(transformationService.currentRules()).thenReturn(transformationRules)
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
+
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
+
+        val mtbFile =
+            Mtb.builder()
+                .patient(Patient.builder().id("123").build())
+                .build()
+
+        this.requestProcessor.processMtbFile(mtbFile)
+
+        val requestCaptor = argumentCaptor<Request>()
+        verify(requestService, times(1)).save(requestCaptor.capture())
+        assertThat(requestCaptor.firstValue.transformationVersion).isEqualTo(transformationRules?.version)
+        verify(transformationService, times(1)).transform(any<Mtb>(), eq(transformationRules))
+    }
+
     @Test
     fun testShouldDetectMtbFileDuplicationAndSendDuplicationEvent() {
         doAnswer {
@@ -178,9 +309,9 @@ class RequestProcessorTest {
             .whenever(pseudonymizeService)
             .patientPseudonym(anyValueClass())
 
-        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
-        whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
         val mtbFile =
             Mtb.builder()
@@ -239,9 +370,9 @@ class RequestProcessorTest {
             .whenever(pseudonymizeService)
             .patientPseudonym(anyValueClass())
 
-        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
-        whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
         val mtbFile =
             Mtb.builder()
@@ -304,9 +435,9 @@ class RequestProcessorTest {
             .whenever(pseudonymizeService)
             .genomDeTan(anyValueClass())
 
-        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
-        whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
         val mtbFile =
             Mtb.builder()
@@ -404,9 +535,9 @@ class RequestProcessorTest {
             .whenever(pseudonymizeService)
             .genomDeTan(anyValueClass())
 
-        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
-        whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
         requestProcessor =
             RequestProcessor(
@@ -501,7 +632,7 @@ class RequestProcessorTest {
 
         doAnswer { it.arguments.first() }
             .whenever(transformationService)
-            .transform(any<Mtb>())
+            .transform(any<Mtb>(), anyOrNull())
 
         val mtbFile =
             Mtb.builder()
@@ -567,6 +698,27 @@ class RequestProcessorTest {
         assertThat(requestCaptor.firstValue.status).isEqualTo(RequestStatus.ERROR)
     }
 
+    @Test
+    fun testShouldSaveUnavailableReportIfCallNotPermitted() {
+        doThrow(RuntimeException("gPAS", CallNotPermittedException("gPAS", CircuitBreaker.State.OPEN)))
+            .whenever(pseudonymizeService)
+            .patientPseudonym(anyValueClass())
+
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
+
+        val result =
+            this.requestProcessor.processMtbFile(
+                Mtb.builder().patient(Patient.builder().id("123").build()).build()
+            )
+
+        assertThat(result).isFalse()
+        val requestCaptor = argumentCaptor<Request>()
+        verify(requestService, times(1)).save(requestCaptor.capture())
+        assertThat(requestCaptor.firstValue.status).isEqualTo(RequestStatus.ERROR)
+        assertThat(requestCaptor.firstValue.report?.description)
+            .isEqualTo("Zielsystem derzeit nicht verfügbar. Keine Verarbeitung oder Weiterleitung.")
+    }
+
     @Test
     fun testShouldNotDetectMtbFileDuplicationIfDuplicationNotConfigured() {
         this.appConfigProperties.duplicationDetection = false
@@ -575,13 +727,13 @@ class RequestProcessorTest {
             .whenever(pseudonymizeService)
             .patientPseudonym(anyValueClass())
 
-        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
         doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
             .whenever(sender)
             .send(any<DnpmV2MtbFileRequest>())
 
-        whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
         val mtbFile =
             Mtb.builder()
@@ -628,9 +780,9 @@ class RequestProcessorTest {
             .whenever(pseudonymizeService)
             .genomDeTan(anyValueClass())
 
-        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+        doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
-        whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+        whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
         requestProcessor =
             RequestProcessor(
@@ -770,9 +922,9 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -871,13 +1023,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -983,13 +1135,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -1082,13 +1234,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -1239,13 +1391,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -1361,13 +1513,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -1469,13 +1621,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -1593,13 +1745,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -1731,13 +1883,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -1860,13 +2012,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -1956,13 +2108,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
@@ -2066,13 +2218,13 @@ class RequestProcessorTest {
                 .whenever(pseudonymizeService)
                 .patientPseudonym(anyValueClass())
 
-            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>())
+            doAnswer { it.arguments[0] }.whenever(transformationService).transform(any<Mtb>(), anyOrNull())
 
             doAnswer { MtbFileSender.Response(status = RequestStatus.SUCCESS) }
                 .whenever(sender)
                 .send(any<DnpmV2MtbFileRequest>())
 
-            whenever(consentProcessor.consentGatedCheckAndTryEmbedding(any())).thenReturn(true)
+            whenever(consentProcessor.checkAndTryEmbedding(any())).thenReturn(ConsentCheckResult(true))
 
             requestProcessor =
                 RequestProcessor(
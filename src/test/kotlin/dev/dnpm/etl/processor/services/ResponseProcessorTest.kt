@@ -137,6 +137,27 @@ class ResponseProcessorTest {
     assertThat(captor.firstValue.followupCount).isEqualTo(expectedFollowUpCount)
   }
 
+  @Test
+  fun shouldMarkReportOfRequestWithStaleConsent() {
+    doAnswer { Optional.of(testRequest.copy(consentStale = true)) }
+        .whenever(requestService)
+        .findByUuid(anyValueClass())
+
+    val event =
+        ResponseEvent(
+            RequestId("TestID1234"),
+            Instant.parse("2023-09-09T00:00:00Z"),
+            RequestStatus.SUCCESS,
+        )
+
+    this.responseProcessor.handleResponseEvent(event)
+
+    val captor = argumentCaptor<Request>()
+    verify(requestService, times(1)).save(captor.capture())
+    assertThat(captor.firstValue.report?.description)
+        .isEqualTo("Keine Probleme erkannt (${ResponseProcessor.STALE_CONSENT_NOTE})")
+  }
+
   companion object {
 
     @JvmStatic
@@ -0,0 +1,125 @@
+/*
+ * This file is part of ETL-Processor
+ *
+ * Copyright (c) 2023       Comprehensive Cancer Center Mainfranken
+ * Copyright (c) 2026  Paul-Christian Volkmer, Datenintegrationszentrum Philipps-Universität Marburg and Contributors
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as published
+ * by the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package dev.dnpm.etl.processor.services
+
+import dev.dnpm.etl.processor.config.JacksonConfig
+import dev.dnpm.etl.processor.config.TransformationRulesConfigProperties
+import org.assertj.core.api.Assertions.assertThat
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.FileTime
+import java.time.Instant
+
+class TransformationRulesLoaderTest {
+    @TempDir
+    lateinit var tempDir: Path
+
+    private lateinit var file: Path
+    private lateinit var transformationService: TransformationService
+    private lateinit var loader: TransformationRulesLoader
+
+    @BeforeEach
+    fun setup() {
+        val jsonMapper = JacksonConfig().jsonMapper()
+        this.file = tempDir.resolve("transformations.json")
+        this.transformationService = TransformationService(jsonMapper, emptyList())
+        this.loader =
+            TransformationRulesLoader(
+                transformationService,
+                TransformationRulesConfigProperties(file.toString()),
+                jsonMapper,
+            )
+    }
+
+    private fun writeRules(
+        content: String,
+        modified: Instant,
+    ) {
+        Files.writeString(file, content)
+        Files.setLastModifiedTime(file, FileTime.from(modified))
+    }
+
+    @Test
+    fun shouldActivateRulesFromFile() {
+        writeRules(
+            """
+            {
+              "transformations": [{ "path": "diagnoses[*].code.version", "from": "2013", "to": "2014" }],
+              "mappingTables": [{ "path": "diagnoses[*].code.code", "entries": [{ "from": "F79.9", "to": "F79.0" }] }]
+            }
+            """.trimIndent(),
+            Instant.parse("2026-01-01T12:00:00Z"),
+        )
+
+        assertThat(loader.reload()).isTrue
+        assertThat(transformationService.getTransformations()).hasSize(1)
+        assertThat(transformationService.getMappingTables()).hasSize(1)
+        assertThat(transformationService.currentRules()?.version).isEqualTo(transformationService.getRulesVersion())
+    }
+
+    @Test
+    fun shouldNotReadUnmodifiedFileAgain() {
+        writeRules("""{ "transformations": [] }""", Instant.parse("2026-01-01T12:00:00Z"))
+
+        assertThat(loader.reload()).isTrue
+        assertThat(loader.reload()).isFalse
+    }
+
+    @Test
+    fun shouldReloadOnModifiedMappingTableFile() {
+        val csvFile = tempDir.resolve("mapping.csv")
+        Files.writeString(csvFile, "F79.9,F79.0")
+        Files.setLastModifiedTime(csvFile, FileTime.from(Instant.parse("2026-01-01T12:00:00Z")))
+        writeRules(
+            """{ "mappingTables": [{ "path": "diagnoses[*].code.code", "file": "$csvFile" }] }""",
+            Instant.parse("2026-01-01T12:00:00Z"),
+        )
+
+        assertThat(loader.reload()).isTrue
+        assertThat(loader.reload()).isFalse
+        assertThat(transformationService.getMappingTables().first().size).isEqualTo(1)
+
+        Files.writeString(csvFile, "F79.9,F79.0\nF79.8,F79.0")
+        Files.setLastModifiedTime(csvFile, FileTime.from(Instant.parse("2026-01-01T12:01:00Z")))
+
+        assertThat(loader.reload()).isTrue
+        assertThat(transformationService.getMappingTables().first().size).isEqualTo(2)
+    }
+
+    @Test
+    fun shouldKeepRulesOnInvalidFile() {
+        writeRules(
+            """{ "transformations": [{ "path": "diagnoses[*].code.version", "from": "2013", "to": "2014" }] }""",
+            Instant.parse("2026-01-01T12:00:00Z"),
+        )
+        loader.reload()
+        val version = transformationService.getRulesVersion()
+
+        writeRules("""{ "transformations": [""", Instant.parse("2026-01-01T12:01:00Z"))
+
+        assertThat(loader.reload()).isFalse
+        assertThat(transformationService.getRulesVersion()).isEqualTo(version)
+        assertThat(transformationService.getTransformations()).hasSize(1)
+    }
+}
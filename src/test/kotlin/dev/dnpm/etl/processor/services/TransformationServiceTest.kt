@@ -23,11 +23,15 @@ package dev.dnpm.etl.processor.services
 import ca.uhn.fhir.context.FhirContext
 import com.fasterxml.jackson.databind.ObjectMapper
 import com.fasterxml.jackson.databind.node.ObjectNode
+import com.jayway.jsonpath.JsonPath
+import com.jayway.jsonpath.PathNotFoundException
 import dev.dnpm.etl.processor.config.JacksonConfig
 import dev.pcvolkmer.mv64e.mtb.*
 import org.assertj.core.api.Assertions.assertThat
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+import org.springframework.core.io.ClassPathResource
 import java.time.Instant
 import java.util.*
 
@@ -165,4 +169,230 @@ class TransformationServiceTest {
     val transformed = service.transform(mtbFile)
     assertThat(transformed.metadata.modelProjectConsent.date).isNotNull
   }
+
+  @Test
+  fun shouldApplyTransformationsInConfiguredOrder() {
+    val service =
+        TransformationService(
+            JacksonConfig().jsonMapper(),
+            listOf(
+                Transformation.of("diagnoses[*].code.version") from "2013" to "2014",
+                Transformation.of("diagnoses[*].code.version") from "2014" to "2015",
+            ),
+        )
+
+    val mtbFile =
+        Mtb.builder()
+            .diagnoses(
+                listOf(
+                    MtbDiagnosis.builder()
+                        .id("1234")
+                        .code(Coding.builder().code("F79.9").version("2013").build())
+                        .build()
+                )
+            )
+            .build()
+
+    val actual = service.transform(mtbFile)
+
+    assertThat(actual.diagnoses[0].code.version).isEqualTo("2015")
+  }
+
+  @Test
+  fun shouldApplyTransformationsUsingJsonPathFilter() {
+    val service =
+        TransformationService(
+            JacksonConfig().jsonMapper(),
+            listOf(
+                Transformation.of("diagnoses[?(@.id == '1234')].code.version") from "2013" to "2014",
+                Transformation.of("diagnoses[*].code.code") from "F79.8" to "F79.7",
+            ),
+        )
+
+    val mtbFile =
+        Mtb.builder()
+            .diagnoses(
+                listOf(
+                    MtbDiagnosis.builder()
+                        .id("1234")
+                        .code(Coding.builder().code("F79.9").version("2013").build())
+                        .build(),
+                    MtbDiagnosis.builder()
+                        .id("5678")
+                        .code(Coding.builder().code("F79.8").version("2013").build())
+                        .build(),
+                )
+            )
+            .build()
+
+    val actual = service.transform(mtbFile)
+
+    assertThat(actual.diagnoses[0].code.version).isEqualTo("2014")
+    assertThat(actual.diagnoses[1].code.code).isEqualTo("F79.7")
+    assertThat(actual.diagnoses[1].code.version).isEqualTo("2013")
+  }
+
+  @Test
+  fun shouldTransformLikeJsonPath() {
+    val jsonMapper = JacksonConfig().jsonMapper()
+    val transformations =
+        listOf(
+            Transformation.of("diagnoses[*].code.version") from "2025" to "2024",
+            Transformation.of("diagnoses[*].topography.version") from "2025" to "2024",
+            Transformation.of("patient.healthInsurance.reference.display") from "AOK" to "AOK Hessen",
+            Transformation.of("unknown[*].code.version") from "2025" to "2024",
+            Transformation.of("diagnoses.code.version") from "2025" to "2023",
+        )
+    val mtbFile =
+        jsonMapper.readValue(
+            ClassPathResource("mv64e-mtb-fake-patient.json").inputStream,
+            Mtb::class.java,
+        )
+
+    var json = jsonMapper.writeValueAsString(mtbFile)
+    transformations.forEach { transformation ->
+      val before = transformation.path.substringBeforeLast(".")
+      val last = transformation.path.substringAfterLast(".")
+      val jsonPath = JsonPath.parse(json)
+      try {
+        jsonPath.set(
+            "$.$before.[?]$last",
+            transformation.newValue,
+            { it.item(HashMap::class.java)[last] == transformation.existingValue },
+        )
+      } catch (_: PathNotFoundException) {
+        // Ignore
+      }
+      json = jsonPath.jsonString()
+    }
+    val expected = jsonMapper.readValue(json, Mtb::class.java)
+
+    val actual = TransformationService(jsonMapper, transformations).transform(mtbFile)
+
+    assertThat(jsonMapper.writeValueAsString(actual))
+        .isEqualTo(jsonMapper.writeValueAsString(expected))
+  }
+
+  @Test
+  fun shouldReturnGivenMtbFileWithoutTransformations() {
+    val service = TransformationService(JacksonConfig().jsonMapper(), emptyList())
+    val mtbFile = Mtb.builder().diagnoses(listOf(MtbDiagnosis.builder().id("1234").build())).build()
+
+    assertThat(service.transform(mtbFile)).isSameAs(mtbFile)
+  }
+
+  @Test
+  fun shouldReturnGivenMtbFileIfNoTransformationApplies() {
+    val mtbFile =
+        Mtb.builder()
+            .diagnoses(
+                listOf(
+                    MtbDiagnosis.builder()
+                        .id("1234")
+                        .code(Coding.builder().code("F79.9").version("2019").build())
+                        .build()
+                )
+            )
+            .build()
+
+    assertThat(this.service.transform(mtbFile)).isSameAs(mtbFile)
+  }
+
+  @Test
+  fun shouldTransformUsingMappingTable() {
+    val mappingTable =
+        MappingTable("diagnoses[*].code.code", mapOf("F79.9" to "F79.0", "F79.8" to "F79.1"))
+    val service =
+        TransformationService(
+            JacksonConfig().jsonMapper(),
+            listOf(Transformation.of("diagnoses[*].code.code") from "F79.7" to "F79.8"),
+            listOf(mappingTable),
+        )
+
+    val mtbFile =
+        Mtb.builder()
+            .diagnoses(
+                listOf(
+                    MtbDiagnosis.builder()
+                        .id("1234")
+                        .code(Coding.builder().code("F79.9").version("2013").build())
+                        .build(),
+                    MtbDiagnosis.builder()
+                        .id("5678")
+                        .code(Coding.builder().code("F79.7").version("2013").build())
+                        .build(),
+                    MtbDiagnosis.builder()
+                        .id("9012")
+                        .code(Coding.builder().code("F79.6").version("2013").build())
+                        .build(),
+                )
+            )
+            .build()
+
+    val actual = service.transform(mtbFile)
+
+    assertThat(actual.diagnoses.map { it.code.code }).containsExactly("F79.0", "F79.1", "F79.6")
+    assertThat(mappingTable.hits).isEqualTo(2)
+  }
+
+  @Test
+  fun shouldReadMappingTableCsv() {
+    val csv =
+        """
+        # ICD-O-3 Topographie
+        C50.9;C50.8
+
+        C34.9 ; C34.1
+        """
+            .trimIndent()
+
+    assertThat(MappingTable.readCsv(csv.reader(), ';'))
+        .containsExactlyInAnyOrderEntriesOf(mapOf("C50.9" to "C50.8", "C34.9" to "C34.1"))
+  }
+
+  @Test
+  fun shouldNotReadInvalidMappingTableCsv() {
+    assertThrows<IllegalArgumentException> { MappingTable.readCsv("C50.9;C50.8".reader()) }
+  }
+
+  @Test
+  fun shouldActivateUpdatedRules() {
+    val mtbFile =
+        Mtb.builder()
+            .diagnoses(
+                listOf(
+                    MtbDiagnosis.builder()
+                        .id("1234")
+                        .code(Coding.builder().code("F79.9").version("2013").build())
+                        .build()
+                )
+            )
+            .build()
+    val previousRules = service.currentRules()
+
+    val rules =
+        service.update(
+            listOf(Transformation.of("diagnoses[*].code.version") from "2013" to "2019"),
+            emptyList(),
+        )
+
+    assertThat(rules.version).isNotEqualTo(previousRules?.version)
+    assertThat(service.getRulesVersion()).isEqualTo(rules.version)
+    assertThat(service.transform(mtbFile).diagnoses[0].code.version).isEqualTo("2019")
+    assertThat(service.transform(mtbFile, previousRules).diagnoses[0].code.version)
+        .isEqualTo("2014")
+  }
+
+  @Test
+  fun shouldKeepRulesWithSameVersion() {
+    val rules = service.currentRules()
+
+    val updatedRules =
+        service.update(
+            listOf(Transformation.of("diagnoses[*].code.version") from "2013" to "2014"),
+            emptyList(),
+        )
+
+    assertThat(updatedRules).isSameAs(rules)
+  }
 }